@@ -0,0 +1,67 @@
+package de.treestack.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.Nullable;
+import org.keycloak.broker.oidc.OIDCIdentityProvider;
+import org.keycloak.broker.provider.BrokeredIdentityContext;
+import org.keycloak.representations.IDToken;
+import org.keycloak.representations.JsonWebToken;
+
+import java.util.Map;
+
+/**
+ * Read claims the identity provider already delivered with the brokered login, without touching
+ * the user model. Claims are taken from the validated ID token and the user info response that
+ * Keycloak's OIDC broker stores in the context data. For other providers (e.g. SAML) only the
+ * <code>email</code> claim is available, taken from the context itself.
+ */
+final class BrokeredClaims {
+
+    static final String EMAIL = "email";
+    static final String EMAIL_VERIFIED = "email_verified";
+
+    private BrokeredClaims() {
+    }
+
+    static @Nullable String get(BrokeredIdentityContext context, String name) {
+        Map<String, Object> data = context.getContextData();
+        if (data != null) {
+            String value = fromToken(data.get(OIDCIdentityProvider.VALIDATED_ID_TOKEN), name);
+            if (value == null) {
+                value = fromUserInfo(data.get(OIDCIdentityProvider.USER_INFO), name);
+            }
+            if (value != null) {
+                return value;
+            }
+        }
+        return EMAIL.equals(name) ? context.getEmail() : null;
+    }
+
+    private static @Nullable String fromToken(@Nullable Object token, String name) {
+        if (token instanceof IDToken idToken) {
+            // Keycloak's OIDC broker stores a plain JsonWebToken with all claims in the other claims;
+            // in an IDToken, standard claims are mapped to fields instead
+            switch (name) {
+                case EMAIL:
+                    return idToken.getEmail();
+                case EMAIL_VERIFIED:
+                    return idToken.getEmailVerified() != null ? idToken.getEmailVerified().toString() : null;
+                default:
+                    break;
+            }
+        }
+        if (token instanceof JsonWebToken jwt && jwt.getOtherClaims() != null) {
+            Object value = jwt.getOtherClaims().get(name);
+            return value != null ? value.toString() : null;
+        }
+        return null;
+    }
+
+    private static @Nullable String fromUserInfo(@Nullable Object userInfo, String name) {
+        if (userInfo instanceof JsonNode node) {
+            JsonNode value = node.get(name);
+            return value != null && !value.isNull() ? value.asText() : null;
+        }
+        return null;
+    }
+}
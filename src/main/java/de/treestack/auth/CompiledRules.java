@@ -0,0 +1,188 @@
+package de.treestack.auth;
+
+import jakarta.annotation.Nullable;
+import org.jboss.logging.Logger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compiled matching rules of a mapper, published as a single immutable, versioned
+ * {@link Snapshot}. Logins read the current snapshot with one volatile read and never take a
+ * lock, so they always see either the complete old or the complete new configuration.
+ *
+ * <p>When a login presents a configuration that differs from the compiled one, a rebuild is
+ * scheduled on a background thread and the login is still served with the old snapshot. Only
+ * the very first compile of a mapper happens on the login thread, as there is nothing to serve
+ * yet. Concurrent change requests are coalesced into a single rebuild of the latest
+ * configuration.</p>
+ */
+final class CompiledRules {
+
+    private static final Logger LOG = Logger.getLogger(CompiledRules.class);
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "domain-role-rules");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final MapperStateMap<CompiledRules> BY_MAPPER = MapperStateMap.create(id -> new CompiledRules(EXECUTOR));
+
+    private final Executor executor;
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final AtomicReference<Source> requested = new AtomicReference<>();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder staleReads = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    CompiledRules(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Current rules of the given mapper. Mappers without an id are compiled on every call.
+     */
+    static Snapshot forMapper(@Nullable String mapperId, Source source) {
+        if (mapperId == null) {
+            return compile(source, 1);
+        }
+        return BY_MAPPER.get(mapperId).current(source);
+    }
+
+    static @Nullable CompiledRules find(String mapperId) {
+        return BY_MAPPER.find(mapperId);
+    }
+
+    static void clear() {
+        BY_MAPPER.clear();
+    }
+
+    /**
+     * The published snapshot, scheduling a rebuild if it was compiled from a different
+     * configuration than the given one.
+     */
+    Snapshot current(Source source) {
+        reads.increment();
+        Snapshot snapshot = current.get();
+        if (snapshot == null) {
+            Snapshot compiled = compile(source, 1);
+            Snapshot witness = current.compareAndExchange(null, compiled);
+            return witness != null ? witness : compiled;
+        }
+        if (!snapshot.source().equals(source)) {
+            staleReads.increment();
+            requestRebuild(source);
+        }
+        return snapshot;
+    }
+
+    @Nullable Snapshot published() {
+        return current.get();
+    }
+
+    private void requestRebuild(Source source) {
+        requested.set(source);
+        if (rebuilding.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::rebuild);
+            } catch (RejectedExecutionException e) {
+                rebuilding.set(false);
+                LOG.warnf("Could not schedule rebuild of compiled rules: %s", e.getMessage());
+            }
+        }
+    }
+
+    private void rebuild() {
+        do {
+            try {
+                Source source;
+                while ((source = requested.getAndSet(null)) != null) {
+                    // Only this task publishes once the first snapshot exists, so versions stay monotonic
+                    Snapshot old = current.get();
+                    if (!old.source().equals(source)) {
+                        Snapshot rebuilt = compile(source, old.version() + 1);
+                        current.set(rebuilt);
+                        rebuilds.increment();
+                        LOG.debugf("Published compiled rules version %d (%s)", rebuilt.version(), rebuilt.matcher().engine());
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOG.warnf(e, "Rebuild of compiled rules failed; keeping previous version");
+            } finally {
+                rebuilding.set(false);
+            }
+            // A request may have arrived after the queue was drained but before the flag was reset
+        } while (requested.get() != null && rebuilding.compareAndSet(false, true));
+    }
+
+    Stats stats() {
+        Snapshot snapshot = current.get();
+        return new Stats(
+                snapshot != null ? snapshot.version() : 0,
+                snapshot != null ? snapshot.matcher().engine() : null,
+                reads.sum(),
+                staleReads.sum(),
+                rebuilds.sum());
+    }
+
+    static Snapshot compile(Source source, long version) {
+        boolean tenantScoped = source.tenantClaim() != null;
+        DomainMatcher matcher = DomainSetRegistry.compile(
+                DomainRoleIdpMapper.parseAllowedDomains(source.domains()),
+                DomainMatchMode.from(source.matchMode()),
+                tenantScoped);
+
+        var candidateDomains = DomainRoleIdpMapper.parseAllowedDomains(source.candidateDomains());
+        DomainMatcher candidate = candidateDomains.isEmpty()
+                ? null
+                : DomainSetRegistry.compile(candidateDomains, DomainMatchMode.from(source.candidateMatchMode()), tenantScoped);
+
+        return new Snapshot(version, source, matcher, candidate,
+                DomainRoleIdpMapper.parseSamplePercent(source.shadowSamplePercent()));
+    }
+
+    /**
+     * The raw configuration values the rules are compiled from. Compared by value to detect
+     * configuration changes without compiling.
+     *
+     * @param tenantClaim the tenant claim in effect, <code>null</code> unless the domain is read
+     *                    from claims; <code>tenant/domain</code> entries are only scoped if set
+     */
+    record Source(
+            @Nullable String domains,
+            @Nullable String matchMode,
+            @Nullable String tenantClaim,
+            @Nullable String candidateDomains,
+            @Nullable String candidateMatchMode,
+            @Nullable String shadowSamplePercent
+    ) {
+    }
+
+    /**
+     * @param version    version of the published snapshot, <code>0</code> before the first login
+     * @param reads      logins served from a snapshot
+     * @param staleReads logins served from the previous snapshot while a changed configuration
+     *                   was being rebuilt
+     * @param rebuilds   snapshots rebuilt in the background after a configuration change
+     */
+    record Stats(long version, @Nullable String engine, long reads, long staleReads, long rebuilds) {
+    }
+
+    /**
+     * One immutable version of a mapper's compiled rules.
+     */
+    record Snapshot(
+            long version,
+            Source source,
+            DomainMatcher matcher,
+            @Nullable DomainMatcher candidate,
+            double shadowSamplePercent
+    ) {
+    }
+}
@@ -5,7 +5,8 @@ import java.util.Locale;
 enum DomainMatchMode {
     EXACT,
     WILDCARD,
-    REGEX;
+    REGEX,
+    ORGANIZATION;
 
     static DomainMatchMode from(String raw) {
         try {
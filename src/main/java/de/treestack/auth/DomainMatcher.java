@@ -0,0 +1,36 @@
+package de.treestack.auth;
+
+import jakarta.annotation.Nullable;
+
+import java.util.Set;
+
+/**
+ * Compiled, immutable matcher for a set of configured domains. Instances are created by
+ * {@link DomainMatchers#plan(Set, DomainMatchMode)}, which picks the cheapest engine for the
+ * shape and size of the configuration.
+ */
+interface DomainMatcher {
+
+    boolean matches(String domain);
+
+    /**
+     * Match a domain reported for the given tenant (e.g. the <code>tid</code> claim). Only
+     * matchers compiled from tenant-scoped entries (<code>tenant/domain</code>) distinguish
+     * tenants; all others ignore it.
+     */
+    default boolean matches(@Nullable String tenant, String domain) {
+        return matches(domain);
+    }
+
+    /**
+     * The domains (or patterns) this matcher was compiled from.
+     */
+    Set<String> domains();
+
+    DomainMatchMode mode();
+
+    /**
+     * Short name of the matching strategy, used for logging and diagnostics.
+     */
+    String engine();
+}
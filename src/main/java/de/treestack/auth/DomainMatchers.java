@@ -0,0 +1,396 @@
+package de.treestack.auth;
+
+import jakarta.annotation.Nullable;
+import org.jboss.logging.Logger;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * Planner that compiles a configured domain list into a {@link DomainMatcher}. The engine is
+ * chosen by match mode and configuration size:
+ * <ul>
+ *   <li><code>EXACT</code>, up to {@value #LINEAR_SCAN_LIMIT} domains: linear scan over an array</li>
+ *   <li><code>EXACT</code>, more domains: hash lookup in an immutable (open addressing) set</li>
+ *   <li><code>WILDCARD</code>: trie over the DNS labels, walked from the top-level domain</li>
+ *   <li><code>REGEX</code>: patterns compiled once, with a literal-suffix prefilter where the
+ *   pattern ends in a fixed label such as <code>\.org</code></li>
+ *   <li><code>ORGANIZATION</code>: reduction to the registrable domain using the public suffix
+ *   list, followed by a hash lookup</li>
+ * </ul>
+ * When the mapper has a tenant claim, configurations containing tenant-scoped entries
+ * (<code>tenant/domain</code>) get one such matcher per tenant. Without a tenant claim, entries
+ * are never split, so regular expressions may contain <code>/</code>.
+ */
+final class DomainMatchers {
+
+    private static final Logger LOG = Logger.getLogger(DomainMatchers.class);
+
+    static final int LINEAR_SCAN_LIMIT = 4;
+    static final char TENANT_SEPARATOR = '/';
+
+    private DomainMatchers() {
+    }
+
+    static DomainMatcher plan(Set<String> domains, DomainMatchMode mode) {
+        return plan(domains, mode, false);
+    }
+
+    /**
+     * @param tenantScoped whether the mapper resolves a tenant, so that <code>tenant/domain</code>
+     *                     entries are scoped to that tenant
+     */
+    static DomainMatcher plan(Set<String> domains, DomainMatchMode mode, boolean tenantScoped) {
+        boolean hasScopedEntries = domains.stream().anyMatch(d -> tenantSeparator(d) > 0);
+        if (hasScopedEntries && !tenantScoped) {
+            domains.stream().filter(d -> tenantSeparator(d) > 0).forEach(entry -> LOG.warnf(
+                    "Domain pattern '%s' looks tenant-scoped, but no tenant claim is configured; it is matched as is", entry));
+        }
+        DomainMatcher matcher = hasScopedEntries && tenantScoped
+                ? TenantScopedMatcher.compile(domains, mode)
+                : planUnscoped(domains, mode);
+        LOG.debugf("Planned '%s' engine for %d %s domain pattern(s)", matcher.engine(), domains.size(), mode);
+        return matcher;
+    }
+
+    /**
+     * Position of the separator of a <code>tenant/domain</code> entry, or <code>-1</code> if the
+     * entry has no tenant. The tenant must be a plain identifier (letters, digits, <code>-</code>,
+     * <code>_</code> and <code>.</code>), so a <code>/</code> inside a regular expression such as
+     * <code>[^/]+\.example\.com</code> is not taken for a separator.
+     */
+    static int tenantSeparator(String entry) {
+        int separator = entry.indexOf(TENANT_SEPARATOR);
+        if (separator <= 0) return -1;
+        for (int i = 0; i < separator; i++) {
+            char c = entry.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_' && c != '.') return -1;
+        }
+        return separator;
+    }
+
+    private static DomainMatcher planUnscoped(Set<String> domains, DomainMatchMode mode) {
+        // Regular expressions are used verbatim and matched against the punycode form, unless written in Unicode
+        Set<String> compiled = mode == DomainMatchMode.REGEX
+                ? Set.copyOf(domains)
+                : domains.stream().map(DomainNames::canonical).collect(Collectors.toUnmodifiableSet());
+        return switch (mode) {
+            case EXACT -> compiled.size() <= LINEAR_SCAN_LIMIT
+                    ? new LinearScanMatcher(compiled, compiled.toArray(String[]::new))
+                    : new HashSetMatcher(compiled);
+            case WILDCARD -> LabelTrieMatcher.compile(compiled);
+            case REGEX -> RegexMatcher.compile(compiled);
+            case ORGANIZATION -> OrganizationMatcher.compile(compiled, PublicSuffixList.get());
+        };
+    }
+
+    /**
+     * Entries of the form <code>tenant/domain</code> only apply to logins from that tenant;
+     * entries without a tenant apply to all tenants. Each tenant gets its own matcher, planned
+     * like an unscoped configuration, so a login costs one tenant lookup plus one match.
+     */
+    record TenantScopedMatcher(
+            Set<String> domains,
+            DomainMatchMode mode,
+            Map<String, DomainMatcher> byTenant,
+            DomainMatcher anyTenant
+    ) implements DomainMatcher {
+
+        static TenantScopedMatcher compile(Set<String> entries, DomainMatchMode mode) {
+            Map<String, Set<String>> grouped = new HashMap<>();
+            Set<String> unscoped = new HashSet<>();
+            for (String entry : entries) {
+                int separator = tenantSeparator(entry);
+                if (separator > 0) {
+                    grouped.computeIfAbsent(normalizeTenant(entry.substring(0, separator)), t -> new HashSet<>())
+                            .add(entry.substring(separator + 1));
+                } else {
+                    unscoped.add(entry);
+                }
+            }
+
+            Map<String, DomainMatcher> byTenant = new HashMap<>();
+            grouped.forEach((tenant, domains) -> byTenant.put(tenant, planUnscoped(domains, mode)));
+            return new TenantScopedMatcher(Set.copyOf(entries), mode, Map.copyOf(byTenant), planUnscoped(unscoped, mode));
+        }
+
+        @Override
+        public boolean matches(String domain) {
+            return anyTenant.matches(domain);
+        }
+
+        @Override
+        public boolean matches(@Nullable String tenant, String domain) {
+            if (tenant != null) {
+                DomainMatcher scoped = byTenant.get(normalizeTenant(tenant));
+                if (scoped != null && scoped.matches(domain)) return true;
+            }
+            return anyTenant.matches(domain);
+        }
+
+        @Override
+        public String engine() {
+            return "tenant-scoped";
+        }
+    }
+
+    static String normalizeTenant(String tenant) {
+        return tenant.trim().toLowerCase(Locale.ROOT);
+    }
+
+    record LinearScanMatcher(Set<String> domains, String[] candidates) implements DomainMatcher {
+        @Override
+        public boolean matches(String domain) {
+            for (String candidate : candidates) {
+                if (candidate.equals(domain)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public DomainMatchMode mode() {
+            return DomainMatchMode.EXACT;
+        }
+
+        @Override
+        public String engine() {
+            return "linear-scan";
+        }
+    }
+
+    record HashSetMatcher(Set<String> domains) implements DomainMatcher {
+        @Override
+        public boolean matches(String domain) {
+            return domains.contains(domain);
+        }
+
+        @Override
+        public DomainMatchMode mode() {
+            return DomainMatchMode.EXACT;
+        }
+
+        @Override
+        public String engine() {
+            return "hash-set";
+        }
+    }
+
+    /**
+     * Matches a domain and all of its subdomains by their registrable domain, e.g. any
+     * subdomain of <code>acme.co.uk</code>.
+     */
+    record OrganizationMatcher(
+            Set<String> domains,
+            Set<String> organizations,
+            PublicSuffixList suffixes
+    ) implements DomainMatcher {
+
+        /**
+         * Reduce each configured entry to its registrable domain. Subdomains are widened to their
+         * organization and public suffixes (which could never match) are dropped, both with a
+         * warning.
+         */
+        static OrganizationMatcher compile(Set<String> domains, PublicSuffixList suffixes) {
+            Set<String> organizations = new HashSet<>();
+            for (String domain : domains) {
+                String registrable = suffixes.registrableDomain(domain);
+                if (registrable == null) {
+                    LOG.warnf("Ignoring organization domain '%s' (public suffix, not a registrable domain)", domain);
+                } else {
+                    if (!registrable.equals(domain)) {
+                        LOG.warnf("Organization domain '%s' is not a registrable domain; matching all of '%s' instead",
+                                domain, registrable);
+                    }
+                    organizations.add(registrable);
+                }
+            }
+            return new OrganizationMatcher(domains, Set.copyOf(organizations), suffixes);
+        }
+
+        @Override
+        public boolean matches(String domain) {
+            String registrable = suffixes.registrableDomain(domain);
+            return registrable != null && organizations.contains(registrable);
+        }
+
+        @Override
+        public DomainMatchMode mode() {
+            return DomainMatchMode.ORGANIZATION;
+        }
+
+        @Override
+        public String engine() {
+            return "public-suffix";
+        }
+    }
+
+    /**
+     * Wildcard patterns stored as a trie keyed by DNS label, root at the top-level domain.
+     * A <code>*</code> label matches exactly one non-empty label.
+     */
+    record LabelTrieMatcher(Set<String> domains, Node root) implements DomainMatcher {
+
+        static LabelTrieMatcher compile(Set<String> patterns) {
+            Node root = new Node();
+            for (String pattern : patterns) {
+                String[] labels = parseWildcard(pattern);
+                if (labels == null) continue;
+
+                Node node = root;
+                for (int i = labels.length - 1; i >= 0; i--) {
+                    node = "*".equals(labels[i])
+                            ? node.wildcard()
+                            : node.child(labels[i]);
+                }
+                node.terminal = true;
+            }
+            return new LabelTrieMatcher(patterns, root);
+        }
+
+        @Override
+        public boolean matches(String domain) {
+            String[] labels = domain.split("\\.", -1);
+            return matches(root, labels, labels.length - 1);
+        }
+
+        private static boolean matches(Node node, String[] labels, int index) {
+            if (index < 0) return node.terminal;
+
+            String label = labels[index];
+            if (label.isEmpty()) return false;
+
+            Node exact = node.children.get(label);
+            if (exact != null && matches(exact, labels, index - 1)) return true;
+            return node.wildcard != null && matches(node.wildcard, labels, index - 1);
+        }
+
+        @Override
+        public DomainMatchMode mode() {
+            return DomainMatchMode.WILDCARD;
+        }
+
+        @Override
+        public String engine() {
+            return "label-trie";
+        }
+
+        static final class Node {
+            private final Map<String, Node> children = new HashMap<>();
+            private @Nullable Node wildcard;
+            private boolean terminal;
+
+            Node child(String label) {
+                return children.computeIfAbsent(label, l -> new Node());
+            }
+
+            Node wildcard() {
+                if (wildcard == null) wildcard = new Node();
+                return wildcard;
+            }
+        }
+    }
+
+    /**
+     * Split a wildcard pattern into labels, or return <code>null</code> if the pattern is invalid.
+     */
+    static @Nullable String[] parseWildcard(@Nullable String pattern) {
+        if (pattern == null || pattern.isEmpty()) return null;
+
+        String[] labels = pattern.split("\\.");
+        if (labels.length == 0 || Arrays.stream(labels).anyMatch(String::isEmpty)) {
+            LOG.warnf("Invalid wildcard domain pattern '%s' (empty label)", pattern);
+            return null;
+        }
+        for (String label : labels) {
+            if (!"*".equals(label) && label.indexOf('*') >= 0) {
+                LOG.warnf("Invalid wildcard domain pattern '%s' (asterisk within label)", pattern);
+                return null;
+            }
+        }
+        return labels;
+    }
+
+    record RegexMatcher(Set<String> domains, List<CompiledPattern> patterns) implements DomainMatcher {
+
+        static RegexMatcher compile(Set<String> expressions) {
+            List<CompiledPattern> patterns = new ArrayList<>();
+            for (String expression : expressions) {
+                try {
+                    boolean unicode = !DomainNames.isAscii(expression);
+                    if (unicode) {
+                        LOG.warnf("Domain pattern '%s' contains non-ASCII characters; it is matched against the Unicode " +
+                                "form of the email domain. Prefer writing it against the punycode form.", expression);
+                    }
+                    patterns.add(new CompiledPattern(Pattern.compile(expression), literalSuffix(expression), unicode));
+                } catch (PatternSyntaxException e) {
+                    LOG.warnf(e, "Ignoring invalid domain pattern '%s'", expression);
+                }
+            }
+            return new RegexMatcher(expressions, List.copyOf(patterns));
+        }
+
+        @Override
+        public boolean matches(String domain) {
+            String unicodeDomain = null;
+            for (CompiledPattern pattern : patterns) {
+                String subject = domain;
+                if (pattern.unicode) {
+                    if (unicodeDomain == null) {
+                        unicodeDomain = DomainNames.toUnicode(domain);
+                    }
+                    subject = unicodeDomain;
+                }
+                if (pattern.suffix != null && !subject.endsWith(pattern.suffix)) continue;
+                if (pattern.pattern.matcher(subject).matches()) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public DomainMatchMode mode() {
+            return DomainMatchMode.REGEX;
+        }
+
+        @Override
+        public String engine() {
+            return patterns.stream().anyMatch(p -> p.suffix != null) ? "regex+suffix-prefilter" : "regex";
+        }
+    }
+
+    /**
+     * @param unicode whether the pattern was written with non-ASCII characters and is therefore
+     *                matched against the Unicode form of the domain (kept for configurations
+     *                written before domains were normalized to punycode)
+     */
+    record CompiledPattern(Pattern pattern, @Nullable String suffix, boolean unicode) {
+    }
+
+    /**
+     * Extract a fixed suffix every match of the expression must end with, e.g. <code>.org</code>
+     * for <code>partner-.*\.org</code>. Only the plain case is recognized: an escaped dot
+     * followed by letters, digits or hyphens at the very end, in a pattern without alternation
+     * or inline flags. Returns <code>null</code> if no suffix can be derived safely.
+     */
+    static @Nullable String literalSuffix(String expression) {
+        if (expression.indexOf('|') >= 0 || expression.contains("(?")) return null;
+
+        String body = expression.endsWith("$") ? expression.substring(0, expression.length() - 1) : expression;
+        int start = body.length();
+        while (start > 0 && isLiteralLabelChar(body.charAt(start - 1))) {
+            start--;
+        }
+        if (start == body.length() || start < 2 || body.charAt(start - 1) != '.') return null;
+
+        int backslashes = 0;
+        for (int i = start - 2; i >= 0 && body.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return backslashes % 2 == 1 ? body.substring(start - 1) : null;
+    }
+
+    private static boolean isLiteralLabelChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-';
+    }
+}
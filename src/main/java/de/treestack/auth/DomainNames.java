@@ -0,0 +1,110 @@
+package de.treestack.auth;
+
+import org.jboss.logging.Logger;
+
+import java.net.IDN;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Normalization of domain names to a single canonical form: lower case ASCII, internationalized
+ * labels converted to punycode (<code>bücher.example</code> becomes
+ * <code>xn--bcher-kva.example</code>) and trailing dots removed.
+ *
+ * <p>Plain ASCII domains, by far the most common case, are normalized without calling
+ * {@link IDN}. The most recently used conversions of internationalized email domains are kept in
+ * a small LRU cache because <code>IDN.toASCII</code> is comparatively expensive; the cache is only
+ * locked for non-ASCII domains.</p>
+ */
+final class DomainNames {
+
+    private static final Logger LOG = Logger.getLogger(DomainNames.class);
+
+    static final int CACHE_SIZE = 1024;
+
+    private static final Map<String, String> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    private DomainNames() {
+    }
+
+    /**
+     * Normalize an incoming email domain, using the conversion cache for non-ASCII input.
+     */
+    static String normalize(String domain) {
+        String stripped = stripTrailingDots(domain);
+        if (isAscii(stripped)) {
+            return stripped.toLowerCase(Locale.ROOT);
+        }
+
+        String cached = CACHE.get(stripped);
+        if (cached != null) {
+            return cached;
+        }
+        String converted = toAscii(stripped);
+        CACHE.put(stripped, converted);
+        return converted;
+    }
+
+    /**
+     * Normalize a configured domain or wildcard pattern. Not cached, as configured domains are
+     * only converted once when the matcher is compiled.
+     */
+    static String canonical(String domain) {
+        String stripped = stripTrailingDots(domain);
+        return isAscii(stripped) ? stripped.toLowerCase(Locale.ROOT) : toAscii(stripped);
+    }
+
+    /**
+     * Convert a canonical (punycode) domain back to its Unicode form, e.g. for regular
+     * expressions written with non-ASCII characters. Not cached; only used for such patterns.
+     */
+    static String toUnicode(String domain) {
+        return isAscii(domain) && !domain.contains("xn--")
+                ? domain
+                : IDN.toUnicode(domain, IDN.ALLOW_UNASSIGNED).toLowerCase(Locale.ROOT);
+    }
+
+    static int cacheSize() {
+        return CACHE.size();
+    }
+
+    static boolean isCached(String domain) {
+        return CACHE.containsKey(domain);
+    }
+
+    static void clearCache() {
+        CACHE.clear();
+    }
+
+    private static String toAscii(String domain) {
+        try {
+            return IDN.toASCII(domain, IDN.ALLOW_UNASSIGNED).toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            LOG.debugf("Could not convert domain '%s' to ASCII: %s", domain, e.getMessage());
+            return domain.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static String stripTrailingDots(String domain) {
+        int end = domain.length();
+        while (end > 0 && domain.charAt(end - 1) == '.') {
+            end--;
+        }
+        return end == domain.length() ? domain : domain.substring(0, end);
+    }
+
+    static boolean isAscii(String domain) {
+        for (int i = 0; i < domain.length(); i++) {
+            if (domain.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,207 @@
+package de.treestack.auth;
+
+import jakarta.annotation.Nullable;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.ClientErrorException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.keycloak.models.IdentityProviderMapperModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.services.resources.admin.permissions.AdminPermissionEvaluator;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Admin REST resource exposing runtime information about {@link DomainRoleIdpMapper} instances
+ * of a realm.
+ */
+public class DomainRoleAdminResource {
+
+    private final KeycloakSession session;
+    private final RealmModel realm;
+    private final AdminPermissionEvaluator auth;
+    private final @Nullable Executor migrationExecutor;
+
+    DomainRoleAdminResource(KeycloakSession session, RealmModel realm, AdminPermissionEvaluator auth) {
+        this(session, realm, auth, null);
+    }
+
+    /**
+     * @param migrationExecutor executor for role migrations, <code>null</code> for the shared
+     *                          background thread
+     */
+    DomainRoleAdminResource(
+            KeycloakSession session,
+            RealmModel realm,
+            AdminPermissionEvaluator auth,
+            @Nullable Executor migrationExecutor) {
+        this.session = session;
+        this.realm = realm;
+        this.auth = auth;
+        this.migrationExecutor = migrationExecutor;
+    }
+
+    /**
+     * Login statistics of a mapper on this node: evaluations, match ratio, most frequent email
+     * domains overall and among fallback logins, reuse and rebuilds of the mapper's compiled rules,
+     * and how often rebuilds could share a matcher compiled for another mapper.
+     */
+    @GET
+    @Path("mappers/{mapperId}/statistics")
+    @Produces(MediaType.APPLICATION_JSON)
+    public StatisticsRepresentation getStatistics(@PathParam("mapperId") String mapperId) {
+        auth.realm().requireViewIdentityProviders();
+        requireMapper(mapperId);
+
+        DomainStatistics statistics = DomainStatistics.find(mapperId);
+        DomainStatistics.Snapshot snapshot = statistics != null
+                ? statistics.snapshot()
+                : new DomainStatistics.Snapshot(0, 0, 0, 0d, List.of(), List.of());
+        CompiledRules rules = CompiledRules.find(mapperId);
+        CompiledRules.Stats rulesStats = rules != null
+                ? rules.stats()
+                : new CompiledRules.Stats(0, null, 0, 0, 0);
+        return new StatisticsRepresentation(mapperId, snapshot, rulesStats, DomainSetRegistry.stats());
+    }
+
+    /**
+     * Results of the shadow evaluation of the mapper's candidate domain configuration on this
+     * node: agreement with the live configuration and mean matching time of both.
+     */
+    @GET
+    @Path("mappers/{mapperId}/shadow")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ShadowEvaluation.Snapshot getShadowEvaluation(@PathParam("mapperId") String mapperId) {
+        auth.realm().requireViewIdentityProviders();
+        requireMapper(mapperId);
+
+        ShadowEvaluation shadow = ShadowEvaluation.find(mapperId);
+        return shadow != null
+                ? shadow.snapshot()
+                : new ShadowEvaluation().snapshot();
+    }
+
+    /**
+     * Start moving the direct members of <code>fromRole</code> that are linked to the mapper's
+     * identity provider to the role currently configured for the given branch
+     * (<code>matched</code> or <code>fallback</code>) of the mapper.
+     */
+    @POST
+    @Path("mappers/{mapperId}/migrations")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response startMigration(@PathParam("mapperId") String mapperId, MigrationRequest request) {
+        auth.realm().requireManageIdentityProviders();
+        auth.users().requireManage();
+        IdentityProviderMapperModel mapper = requireMapper(mapperId);
+
+        if (request == null || request.fromRole() == null || request.fromRole().isBlank()) {
+            throw new BadRequestException("fromRole is required");
+        }
+        String configKey = configKey(request.branch());
+        String toRole = mapper.getConfig().get(configKey);
+        if (toRole == null || toRole.equals(request.fromRole())) {
+            throw new BadRequestException("No different role configured for branch '" + request.branch() + "'");
+        }
+        // Members of the other branch's current role are granted it legitimately and must not be moved
+        if (request.fromRole().equals(mapper.getConfig().get(otherBranchKey(configKey)))) {
+            throw new BadRequestException("fromRole is the role currently configured for the other branch");
+        }
+        if (DomainRoleIdpMapper.findRole(realm, request.fromRole()) == null || DomainRoleIdpMapper.findRole(realm, toRole) == null) {
+            throw new BadRequestException("Role not found");
+        }
+
+        int batchSize = Objects.requireNonNullElse(request.batchSize(), RoleMigration.DEFAULT_BATCH_SIZE);
+        long pauseMillis = Objects.requireNonNullElse(request.pauseMillis(), RoleMigration.DEFAULT_PAUSE_MILLIS);
+        if (batchSize <= 0 || pauseMillis < 0) {
+            throw new BadRequestException("batchSize must be positive and pauseMillis must not be negative");
+        }
+
+        RoleMigration migration = new RoleMigration(session.getKeycloakSessionFactory(), realm.getId(), mapperId,
+                mapper.getIdentityProviderAlias(), request.fromRole(), toRole, batchSize, pauseMillis);
+        boolean submitted = migrationExecutor != null
+                ? RoleMigration.submit(migration, migrationExecutor)
+                : RoleMigration.submit(migration);
+        if (!submitted) {
+            throw new ClientErrorException("A migration for this mapper is already running", Response.Status.CONFLICT);
+        }
+        return Response.accepted(migration.progress()).build();
+    }
+
+    /**
+     * Progress of the last migration started for the mapper on this node.
+     */
+    @GET
+    @Path("mappers/{mapperId}/migrations")
+    @Produces(MediaType.APPLICATION_JSON)
+    public RoleMigration.Progress getMigration(@PathParam("mapperId") String mapperId) {
+        auth.realm().requireViewIdentityProviders();
+        requireMapper(mapperId);
+
+        RoleMigration migration = RoleMigration.find(mapperId);
+        if (migration == null) {
+            throw new NotFoundException("No migration found");
+        }
+        return migration.progress();
+    }
+
+    private IdentityProviderMapperModel requireMapper(String mapperId) {
+        IdentityProviderMapperModel mapper = realm.getIdentityProviderMapperById(mapperId);
+        if (mapper == null || !DomainRoleIdpMapper.PROVIDER_ID.equals(mapper.getIdentityProviderMapper())) {
+            throw new NotFoundException("Mapper not found");
+        }
+        return mapper;
+    }
+
+    private static String otherBranchKey(String configKey) {
+        return DomainRoleIdpMapper.CFG_MATCHED_ROLE.equals(configKey)
+                ? DomainRoleIdpMapper.CFG_FALLBACK_ROLE
+                : DomainRoleIdpMapper.CFG_MATCHED_ROLE;
+    }
+
+    private static String configKey(@Nullable String branch) {
+        String normalized = branch != null ? branch.toLowerCase(Locale.ROOT) : "matched";
+        return switch (normalized) {
+            case "matched" -> DomainRoleIdpMapper.CFG_MATCHED_ROLE;
+            case "fallback" -> DomainRoleIdpMapper.CFG_FALLBACK_ROLE;
+            default -> throw new BadRequestException("branch must be 'matched' or 'fallback'");
+        };
+    }
+
+    /**
+     * @param compiledRules  snapshot reuse by logins and background rebuilds of this mapper
+     * @param sharedMatchers node-wide registry lookups, made only when rules are compiled
+     */
+    public record StatisticsRepresentation(
+            String mapperId,
+            DomainStatistics.Snapshot logins,
+            CompiledRules.Stats compiledRules,
+            DomainSetRegistry.CacheStats sharedMatchers
+    ) {
+    }
+
+    /**
+     * @param branch      <code>matched</code> (default) or <code>fallback</code>
+     * @param fromRole    role whose members are moved
+     * @param batchSize   users per transaction, defaults to {@value RoleMigration#DEFAULT_BATCH_SIZE}
+     * @param pauseMillis pause between transactions, defaults to {@value RoleMigration#DEFAULT_PAUSE_MILLIS}
+     */
+    public record MigrationRequest(
+            @Nullable String branch,
+            String fromRole,
+            @Nullable Integer batchSize,
+            @Nullable Long pauseMillis
+    ) {
+    }
+}
@@ -33,6 +33,34 @@ import java.util.stream.Collectors;
  *       <code>fallbackRole</code> (role): Optional realm role to grant when the user's email 
  *       domain does not match the allowed list.
  *   </li>
+ *   <li>
+ *       <code>domainSource</code> (list): <code>Email</code> (default) takes the domain from the
+ *       user's email, <code>Claim</code> from a claim of the brokered login.
+ *   </li>
+ *   <li>
+ *       <code>domainClaim</code> (string): Claim holding an email address, UPN or plain domain
+ *       (e.g. "email", "upn" or "hd"). Only used with domain source <code>Claim</code>.
+ *   </li>
+ *   <li>
+ *       <code>tenantClaim</code> (string): Optional claim identifying the tenant (e.g. "tid").
+ *       Allowed domains of the form <code>tenant/domain</code> then only match logins from that
+ *       tenant. Only used with domain source <code>Claim</code>.
+ *   </li>
+ *   <li>
+ *       <code>requireVerifiedEmail</code> (boolean): Skip the login unless the identity provider
+ *       reports <code>email_verified</code>. Only used with domain source <code>Claim</code>.
+ *   </li>
+ *   <li>
+ *       <code>candidateDomains</code> (string): Optional domain list evaluated in shadow mode next
+ *       to <code>allowedDomains</code>. It never grants roles.
+ *   </li>
+ *   <li>
+ *       <code>candidateDomainMatchMode</code> (list): Match mode of <code>candidateDomains</code>.
+ *   </li>
+ *   <li>
+ *       <code>shadowSamplePercent</code> (string): Percentage of logins on which
+ *       <code>candidateDomains</code> is evaluated.
+ *   </li>
  * </ul>
  */
 public class DomainRoleIdpMapper extends AbstractIdentityProviderMapper {
@@ -43,8 +71,17 @@ public class DomainRoleIdpMapper extends AbstractIdentityProviderMapper {
 
     private static final String CFG_DOMAINS = "allowedDomains";
     private static final String CFG_DOMAIN_MATCH_MODE = "domainMatchMode";
-    private static final String CFG_MATCHED_ROLE = "matchedRole";
-    private static final String CFG_FALLBACK_ROLE = "fallbackRole";
+    static final String CFG_MATCHED_ROLE = "matchedRole";
+    static final String CFG_FALLBACK_ROLE = "fallbackRole";
+    private static final String CFG_DOMAIN_SOURCE = "domainSource";
+    private static final String CFG_DOMAIN_CLAIM = "domainClaim";
+    private static final String CFG_TENANT_CLAIM = "tenantClaim";
+    private static final String CFG_REQUIRE_VERIFIED_EMAIL = "requireVerifiedEmail";
+    private static final String DOMAIN_SOURCE_CLAIM = "claim";
+    private static final String CFG_CANDIDATE_DOMAINS = "candidateDomains";
+    private static final String CFG_CANDIDATE_DOMAIN_MATCH_MODE = "candidateDomainMatchMode";
+    private static final String CFG_SHADOW_SAMPLE_PERCENT = "shadowSamplePercent";
+    private static final double DEFAULT_SHADOW_SAMPLE_PERCENT = 10d;
 
     private static final List<ProviderConfigProperty> CONFIG_PROPERTIES;
 
@@ -74,16 +111,80 @@ public class DomainRoleIdpMapper extends AbstractIdentityProviderMapper {
         matchMode.setLabel("Domain Match Mode");
         matchMode.setHelpText("Defines how email domains are matched against the configured domain list. Possible " +
                 "values are 'exact' for exact domain matches (e.g. example.org), 'wildcard' supports * as a " +
-                "placeholder (e.g. *.example.org.de) and 'regex' allows full Java regular expressions but " +
-                "also carries the highest risk of misconfiguration.");
+                "placeholder (e.g. *.example.org.de), 'organization' matches a registrable domain and all of its " +
+                "subdomains based on the Public Suffix List (e.g. acme.co.uk) and 'regex' allows full Java regular " +
+                "expressions but also carries the highest risk of misconfiguration.");
         matchMode.setType(ProviderConfigProperty.LIST_TYPE);
-        matchMode.setOptions(List.of("Exact", "Wildcard", "Regex"));
+        matchMode.setOptions(List.of("Exact", "Wildcard", "Organization", "Regex"));
         matchMode.setDefaultValue("Exact");
 
+        var domainSource = new ProviderConfigProperty();
+        domainSource.setName(CFG_DOMAIN_SOURCE);
+        domainSource.setLabel("Domain Source");
+        domainSource.setHelpText("Where the email domain is taken from. 'Email' uses the email address of the " +
+                "Keycloak user, 'Claim' reads the claim configured below directly from the brokered login (ID token " +
+                "or user info) without reading the user.");
+        domainSource.setType(ProviderConfigProperty.LIST_TYPE);
+        domainSource.setOptions(List.of("Email", "Claim"));
+        domainSource.setDefaultValue("Email");
+
+        var domainClaim = new ProviderConfigProperty();
+        domainClaim.setName(CFG_DOMAIN_CLAIM);
+        domainClaim.setLabel("Domain Claim");
+        domainClaim.setHelpText("Claim holding an email address, UPN or plain domain (e.g. 'email', 'upn' or 'hd'). " +
+                "Only used with domain source 'Claim'.");
+        domainClaim.setType(ProviderConfigProperty.STRING_TYPE);
+        domainClaim.setDefaultValue(BrokeredClaims.EMAIL);
+
+        var tenantClaim = new ProviderConfigProperty();
+        tenantClaim.setName(CFG_TENANT_CLAIM);
+        tenantClaim.setLabel("Tenant Claim");
+        tenantClaim.setHelpText("Optional claim identifying the tenant (e.g. 'tid'). Allowed domains of the form " +
+                "'tenant/domain' then only match logins from that tenant. Only used with domain source 'Claim'.");
+        tenantClaim.setType(ProviderConfigProperty.STRING_TYPE);
+
+        var requireVerified = new ProviderConfigProperty();
+        requireVerified.setName(CFG_REQUIRE_VERIFIED_EMAIL);
+        requireVerified.setLabel("Require Verified Email");
+        requireVerified.setHelpText("Skip role assignment unless the identity provider reports 'email_verified' " +
+                "as true. Only used with domain source 'Claim'.");
+        requireVerified.setType(ProviderConfigProperty.BOOLEAN_TYPE);
+        requireVerified.setDefaultValue("false");
+
+        var candidateDomains = new ProviderConfigProperty();
+        candidateDomains.setName(CFG_CANDIDATE_DOMAINS);
+        candidateDomains.setLabel("Candidate E-Mail Domain(s)");
+        candidateDomains.setHelpText("Optional domain list evaluated in shadow mode only: it is compared with the " +
+                "live configuration on a sample of logins but never used to grant roles. Results are available " +
+                "through the admin REST API.");
+        candidateDomains.setType(ProviderConfigProperty.STRING_TYPE);
+
+        var candidateMatchMode = new ProviderConfigProperty();
+        candidateMatchMode.setName(CFG_CANDIDATE_DOMAIN_MATCH_MODE);
+        candidateMatchMode.setLabel("Candidate Domain Match Mode");
+        candidateMatchMode.setHelpText("Match mode for the candidate domain list.");
+        candidateMatchMode.setType(ProviderConfigProperty.LIST_TYPE);
+        candidateMatchMode.setOptions(List.of("Exact", "Wildcard", "Organization", "Regex"));
+        candidateMatchMode.setDefaultValue("Exact");
+
+        var shadowSample = new ProviderConfigProperty();
+        shadowSample.setName(CFG_SHADOW_SAMPLE_PERCENT);
+        shadowSample.setLabel("Shadow Sample (%)");
+        shadowSample.setHelpText("Percentage of logins (0-100) on which the candidate domain list is evaluated.");
+        shadowSample.setType(ProviderConfigProperty.STRING_TYPE);
+        shadowSample.setDefaultValue(String.valueOf((int) DEFAULT_SHADOW_SAMPLE_PERCENT));
+
         props.add(domains);
         props.add(matchMode);
         props.add(matchedRole);
         props.add(fallbackRole);
+        props.add(domainSource);
+        props.add(domainClaim);
+        props.add(tenantClaim);
+        props.add(requireVerified);
+        props.add(candidateDomains);
+        props.add(candidateMatchMode);
+        props.add(shadowSample);
 
         CONFIG_PROPERTIES = Collections.unmodifiableList(props);
     }
@@ -113,6 +214,12 @@ public class DomainRoleIdpMapper extends AbstractIdentityProviderMapper {
         return CONFIG_PROPERTIES;
     }
 
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        // Drop per-mapper state when its realm or identity provider is removed
+        factory.register(MapperStateMap::onEvent);
+    }
+
     @Override
     public String[] getCompatibleProviders() {
         return new String[]{ANY_PROVIDER};
@@ -121,7 +228,9 @@ public class DomainRoleIdpMapper extends AbstractIdentityProviderMapper {
     @Override
     public void updateBrokeredUser(KeycloakSession session, RealmModel realm, UserModel user, IdentityProviderMapperModel mapperModel, BrokeredIdentityContext context) {
         LOG.debugf("updateBrokeredUser invoked for user=%s, realm=%s, brokeredId=%s", user.getUsername(), realm.getName(), context.getBrokerUserId());
-        assignRole(realm, user, mapperModel);
+        try (var ignored = MapperTracing.startSpan("DomainRoleIdpMapper.updateBrokeredUser")) {
+            assignRole(realm, user, mapperModel, context);
+        }
     }
 
     /**
@@ -131,20 +240,43 @@ public class DomainRoleIdpMapper extends AbstractIdentityProviderMapper {
             RealmModel realm,
             UserModel user,
             IdentityProviderMapperModel mapperModel) {
+        assignRole(realm, user, mapperModel, null);
+    }
+
+    /**
+     * Assign a role according to the mapper configuration. Depending on the configured domain
+     * source, the domain (and tenant) is taken from the user's email or from the claims of the
+     * brokered login.
+     */
+    static void assignRole(
+            RealmModel realm,
+            UserModel user,
+            IdentityProviderMapperModel mapperModel,
+            @Nullable BrokeredIdentityContext context) {
 
-        String email = user.getEmail();
-        if (!isValidEmail(email)) {
-            LOG.debugf("Skipping role assignment for user=%s due to missing/invalid email: %s", user.getUsername(), email);
+        DomainSubject subject = resolveSubject(user, mapperModel.getConfig(), context);
+        if (subject == null) {
+            MapperTracing.currentSpan().setAttribute(MapperTracing.ATTR_OUTCOME, "skipped");
             return;
         }
+        String domain = subject.domain();
+
+        MapperConfig cfg;
+        try (var ignored = MapperTracing.startSpan("DomainRoleIdpMapper.loadConfig")) {
+            var event = new MapperEvents.ConfigLoad();
+            event.begin();
+            cfg = loadConfig(realm, mapperModel);
+            if (event.shouldCommit()) {
+                event.describe(realm, mapperModel);
+                event.commit();
+            }
+        }
 
-        String domain = extractDomain(email);
-        MapperConfig cfg = loadConfig(realm, mapperModel);
-
-        LOG.debugf("User %s has email domain '%s'. Allowed domains configured: %s; matchedRole=%s; fallbackRole=%s",
+        LOG.debugf("User %s has email domain '%s'. Allowed domains configured: %s (%s); matchedRole=%s; fallbackRole=%s",
                 user.getUsername(),
                 domain,
                 cfg.allowedDomains(),
+                cfg.matcher().engine(),
                 cfg.matchedRole != null ? cfg.matchedRole.getName() : null,
                 cfg.fallbackRole != null ? cfg.fallbackRole.getName() : null);
 
@@ -152,14 +284,63 @@ public class DomainRoleIdpMapper extends AbstractIdentityProviderMapper {
             LOG.debugf("No allowed domains configured for mapper '%s' in realm '%s'", mapperModel.getName(), realm.getName());
         }
 
-        DomainMatchMode mode = DomainMatchMode.from(mapperModel.getConfig().get(CFG_DOMAIN_MATCH_MODE));
-        if (matchesDomain(domain, cfg.allowedDomains(), mode)) {
-            grantRole(user, cfg.matchedRole);
-        } else {
-            grantRole(user, cfg.fallbackRole);
+        boolean matched;
+        long matchNanos;
+        try (var span = MapperTracing.startSpan("DomainRoleIdpMapper.matchDomain")) {
+            var event = new MapperEvents.DomainMatch();
+            event.begin();
+            long start = System.nanoTime();
+            matched = cfg.matcher().matches(subject.tenant(), domain);
+            matchNanos = System.nanoTime() - start;
+            if (event.shouldCommit()) {
+                event.describe(realm, mapperModel);
+                event.mode = cfg.matcher().mode().name();
+                event.engine = cfg.matcher().engine();
+                event.patternCount = cfg.allowedDomains().size();
+                event.matched = matched;
+                event.commit();
+            }
+            span.setAttribute(MapperTracing.ATTR_MATCH_MODE, cfg.matcher().mode().name())
+                    .setAttribute(MapperTracing.ATTR_ENGINE, cfg.matcher().engine());
+        }
+
+        DomainStatistics statistics = DomainStatistics.forMapper(mapperModel.getId());
+        if (statistics != null) {
+            statistics.record(domain, matched);
+        }
+
+        if (cfg.candidate() != null && ShadowEvaluation.sample(cfg.shadowSamplePercent())) {
+            ShadowEvaluation shadow = ShadowEvaluation.forMapper(mapperModel.getId());
+            if (shadow != null) {
+                shadow.evaluate(cfg.matcher(), matched, matchNanos, cfg.candidate(), subject.tenant(), domain);
+            }
+        }
+
+        RoleModel role = matched ? cfg.matchedRole : cfg.fallbackRole;
+        boolean granted;
+        try (var span = MapperTracing.startSpan("DomainRoleIdpMapper.grantRole")) {
+            var event = new MapperEvents.RoleGrant();
+            event.begin();
+            granted = grantRole(user, role);
+            if (event.shouldCommit()) {
+                event.describe(realm, mapperModel);
+                event.roleName = role != null ? role.getName() : null;
+                event.granted = granted;
+                event.commit();
+            }
+            span.setAttribute(MapperTracing.ATTR_ROLE_GRANTED, granted);
         }
+
+        MapperTracing.currentSpan()
+                .setAttribute(MapperTracing.ATTR_MATCH_MODE, cfg.matcher().mode().name())
+                .setAttribute(MapperTracing.ATTR_OUTCOME, matched ? "matched" : "fallback")
+                .setAttribute(MapperTracing.ATTR_ROLE_GRANTED, granted);
     }
 
+    /**
+     * Match a single domain against a domain list. Plans a throw-away matcher on every call and
+     * bypasses {@link DomainSetRegistry}; logins use the mapper's {@link CompiledRules} instead.
+     */
     static boolean matchesDomain(
             String domain,
             Set<String> configuredDomains,
@@ -169,94 +350,131 @@ public class DomainRoleIdpMapper extends AbstractIdentityProviderMapper {
             return false;
         }
 
-        return switch (mode) {
-            case EXACT -> matchExact(domain, configuredDomains);
-            case WILDCARD -> matchWildcard(domain, configuredDomains);
-            case REGEX -> matchRegex(domain, configuredDomains);
-        };
-    }
-
-    static boolean matchExact(String domain, Set<String> configuredDomains) {
-        return configuredDomains.contains(domain);
+        return DomainMatchers.plan(configuredDomains, mode).matches(domain);
     }
 
-    static boolean matchWildcard(String domain, Set<String> configuredDomains) {
-        return configuredDomains.stream().anyMatch(pattern -> {
-            if (pattern == null || pattern.isEmpty()) return false;
-
-            String[] labels = pattern.split("\\.");
-            if (Arrays.stream(labels).anyMatch(String::isEmpty)) {
-                LOG.warnf("Invalid wildcard domain pattern '%s' (empty label)", pattern);
-                return false;
-            }
-
-            StringBuilder regex = new StringBuilder();
-            for (int i = 0; i < labels.length; i++) {
-                String label = labels[i];
-                if (i > 0) regex.append("\\.");
-                if ("*".equals(label)) {
-                    // match exactly one DNS label (no dots)
-                    regex.append("[^.]+");
-                } else if (label.indexOf('*') >= 0) {
-                    // Disallow '*' within a label
-                    LOG.warnf("Invalid wildcard domain pattern '%s' (asterisk within label)", pattern);
-                    return false;
-                } else {
-                    regex.append(java.util.regex.Pattern.quote(label));
-                }
-            }
-            return domain.matches(regex.toString());
-        });
-    }
-
-    static boolean matchRegex(String domain, Set<String> configuredDomains) {
-        return configuredDomains.stream().anyMatch(pattern -> {
-            try {
-                return domain.matches(pattern);
-            } catch (Exception e) {
-                LOG.warnf(e, "Failed to match '%s'", pattern);
-                return false;
-            }
-        });
-    }
-
-    static void grantRole(UserModel user, @Nullable RoleModel role) {
+    /**
+     * Grant the role unless the user already has it. Returns whether the user was modified.
+     */
+    static boolean grantRole(UserModel user, @Nullable RoleModel role) {
         if (role == null) {
             LOG.debugf("No role configured; no role changes for user %s", user.getUsername());
-            return;
+            return false;
         }
         if (user.hasRole(role)) {
             LOG.debugf("User %s already has role %s; no action taken", user.getUsername(), role.getName());
-            return;
+            return false;
         }
         LOG.infof("Granting role %s to user %s", role, user.getUsername());
         user.grantRole(role);
+        return true;
     }
 
     /**
-     * Load and normalize configuration values from the mapper model.
+     * Load and normalize configuration values from the mapper model. Roles are resolved per
+     * login; the domain matchers come from the mapper's current {@link CompiledRules} snapshot.
      */
     static MapperConfig loadConfig(RealmModel realm, IdentityProviderMapperModel mapperModel) {
         Map<String, String> cfg = mapperModel.getConfig();
-        RoleModel matched = findRole(realm, cfg.get(CFG_MATCHED_ROLE));
-        RoleModel fallback = findRole(realm, cfg.get(CFG_FALLBACK_ROLE));
+        RoleModel matched = resolveRole(realm, mapperModel, cfg.get(CFG_MATCHED_ROLE));
+        RoleModel fallback = resolveRole(realm, mapperModel, cfg.get(CFG_FALLBACK_ROLE));
 
         LOG.tracef("Loaded mapper config for realm=%s: allowedDomains='%s', matchedRole='%s', fallbackRole='%s'",
                 realm.getName(), cfg.get(CFG_DOMAINS), cfg.get(CFG_MATCHED_ROLE), cfg.get(CFG_FALLBACK_ROLE));
 
+        CompiledRules.Snapshot rules = CompiledRules.forMapper(mapperModel.getId(), new CompiledRules.Source(
+                cfg.get(CFG_DOMAINS),
+                cfg.get(CFG_DOMAIN_MATCH_MODE),
+                tenantClaim(cfg),
+                cfg.get(CFG_CANDIDATE_DOMAINS),
+                cfg.get(CFG_CANDIDATE_DOMAIN_MATCH_MODE),
+                cfg.get(CFG_SHADOW_SAMPLE_PERCENT)));
+
         return new MapperConfig(
-                parseAllowedDomains(cfg.get(CFG_DOMAINS)),
+                rules.matcher(),
                 matched,
-                fallback
+                fallback,
+                rules.candidate(),
+                rules.shadowSamplePercent()
         );
     }
 
+    /**
+     * Parse the shadow sample percentage, clamped to 0-100. Missing or invalid values
+     * default to {@value #DEFAULT_SHADOW_SAMPLE_PERCENT}.
+     */
+    static double parseSamplePercent(@Nullable String raw) {
+        if (raw == null || raw.isBlank()) {
+            return DEFAULT_SHADOW_SAMPLE_PERCENT;
+        }
+        try {
+            return Math.max(0d, Math.min(100d, Double.parseDouble(raw.trim())));
+        } catch (NumberFormatException e) {
+            LOG.warnf("Invalid shadow sample percentage '%s'; using %s", raw, DEFAULT_SHADOW_SAMPLE_PERCENT);
+            return DEFAULT_SHADOW_SAMPLE_PERCENT;
+        }
+    }
+
+    /**
+     * Determine the domain (and tenant, if configured) to match, or <code>null</code> if the
+     * login has to be skipped.
+     */
+    static @Nullable DomainSubject resolveSubject(
+            UserModel user,
+            @Nullable Map<String, String> cfg,
+            @Nullable BrokeredIdentityContext context) {
+
+        boolean fromClaims = cfg != null && context != null
+                && DOMAIN_SOURCE_CLAIM.equalsIgnoreCase(cfg.get(CFG_DOMAIN_SOURCE));
+        if (!fromClaims) {
+            String email = user.getEmail();
+            if (!isValidEmail(email)) {
+                LOG.debugf("Skipping role assignment for user=%s due to missing/invalid email: %s", user.getUsername(), email);
+                return null;
+            }
+            return new DomainSubject(extractDomain(email), null);
+        }
+
+        if (Boolean.parseBoolean(cfg.get(CFG_REQUIRE_VERIFIED_EMAIL))
+                && !Boolean.parseBoolean(BrokeredClaims.get(context, BrokeredClaims.EMAIL_VERIFIED))) {
+            LOG.debugf("Skipping role assignment for brokeredId=%s: email not verified", context.getBrokerUserId());
+            return null;
+        }
+
+        String claim = Optional.ofNullable(cfg.get(CFG_DOMAIN_CLAIM)).filter(c -> !c.isBlank()).orElse(BrokeredClaims.EMAIL);
+        String value = BrokeredClaims.get(context, claim);
+        if (value == null || value.isBlank() || value.endsWith("@")) {
+            LOG.debugf("Skipping role assignment for brokeredId=%s due to missing/invalid claim '%s': %s",
+                    context.getBrokerUserId(), claim, value);
+            return null;
+        }
+
+        String tenantClaim = tenantClaim(cfg);
+        String tenant = tenantClaim != null ? BrokeredClaims.get(context, tenantClaim) : null;
+        return new DomainSubject(extractDomain(value.trim()), tenant);
+    }
+
+    /**
+     * The configured tenant claim, or <code>null</code> if none is set or the domain is not read
+     * from claims. Tenant-scoped domain entries only apply when this is set.
+     */
+    static @Nullable String tenantClaim(Map<String, String> cfg) {
+        String tenantClaim = cfg.get(CFG_TENANT_CLAIM);
+        return DOMAIN_SOURCE_CLAIM.equalsIgnoreCase(cfg.get(CFG_DOMAIN_SOURCE)) && tenantClaim != null && !tenantClaim.isBlank()
+                ? tenantClaim.trim()
+                : null;
+    }
+
     static boolean isValidEmail(@Nullable String email) {
         return email != null && email.contains("@");
     }
 
+    /**
+     * Extract the domain part of an email address (or UPN) in canonical form (lower case,
+     * punycode, no trailing dot). A value without <code>@</code> is taken as a domain.
+     */
     static String extractDomain(String email) {
-        return email.substring(email.indexOf('@') + 1).toLowerCase(Locale.ROOT);
+        return DomainNames.normalize(email.substring(email.indexOf('@') + 1));
     }
 
     /**
@@ -274,6 +492,23 @@ public class DomainRoleIdpMapper extends AbstractIdentityProviderMapper {
                 .collect(Collectors.toSet());
     }
 
+    private static @Nullable RoleModel resolveRole(
+            RealmModel realm,
+            IdentityProviderMapperModel mapperModel,
+            @Nullable String roleName) {
+
+        var event = new MapperEvents.RoleResolution();
+        event.begin();
+        RoleModel role = findRole(realm, roleName);
+        if (event.shouldCommit()) {
+            event.describe(realm, mapperModel);
+            event.roleName = roleName;
+            event.resolved = role != null;
+            event.commit();
+        }
+        return role;
+    }
+
     static @Nullable RoleModel findRole(RealmModel realm, @Nullable String roleName) {
         if (roleName == null) {
             LOG.debugf("No role configured (null) while resolving role in realm '%s'", realm.getName());
@@ -326,10 +561,21 @@ public class DomainRoleIdpMapper extends AbstractIdentityProviderMapper {
         return null;
     }
 
+    /**
+     * The domain to match and, for tenant-scoped rules, the tenant reported by the identity provider.
+     */
+    record DomainSubject(String domain, @Nullable String tenant) {
+    }
+
     record MapperConfig(
-            Set<String> allowedDomains,
+            DomainMatcher matcher,
             @Nullable RoleModel matchedRole,
-            @Nullable RoleModel fallbackRole
+            @Nullable RoleModel fallbackRole,
+            @Nullable DomainMatcher candidate,
+            double shadowSamplePercent
     ) {
+        Set<String> allowedDomains() {
+            return matcher.domains();
+        }
     }
 }
@@ -0,0 +1,129 @@
+package de.treestack.auth;
+
+import jakarta.annotation.Nullable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node-wide registry of compiled domain matchers. Matchers are keyed by a hash of their canonical
+ * content (match mode, tenant scoping and sorted, normalized domain list), so mappers in different realms that
+ * are configured with the same domains share a single immutable {@link DomainMatcher} instead of
+ * holding (and compiling) their own copy.
+ *
+ * <p>The registry is only consulted when a mapper's {@link CompiledRules} snapshot is (re)built,
+ * never per login: computing the content key means parsing, sorting and hashing the whole list,
+ * which only pays off when the result is retained per mapper.</p>
+ *
+ * <p>Entries are only weakly referenced. The strong references are held by the mappers'
+ * snapshots, so a matcher stays registered exactly as long as at least one mapper uses it: once
+ * the last snapshot referencing it is replaced or its mapper state is dropped (see
+ * {@link MapperStateMap}), the garbage collector clears the entry. This takes the place of
+ * explicit reference counting, for which mappers have no release hook. Cleared entries are
+ * purged lazily on the next lookup.</p>
+ */
+final class DomainSetRegistry {
+
+    private static final ConcurrentMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<DomainMatcher> CLEARED = new ReferenceQueue<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private DomainSetRegistry() {
+    }
+
+    /**
+     * Return the shared matcher for the given domains and mode, planning and registering a new
+     * one if no equal configuration is cached yet.
+     */
+    static DomainMatcher compile(Set<String> domains, DomainMatchMode mode, boolean tenantScoped) {
+        purgeCleared();
+
+        String key = canonicalKey(domains, mode, tenantScoped);
+        DomainMatcher cached = lookup(key);
+        if (cached != null) {
+            HITS.increment();
+            return cached;
+        }
+        MISSES.increment();
+
+        DomainMatcher compiled = DomainMatchers.plan(domains, mode, tenantScoped);
+        Entry entry = ENTRIES.compute(key, (k, existing) ->
+                existing != null && existing.get() != null ? existing : new Entry(k, compiled));
+
+        DomainMatcher shared = entry.get();
+        return shared != null ? shared : compiled;
+    }
+
+    private static @Nullable DomainMatcher lookup(String key) {
+        Entry entry = ENTRIES.get(key);
+        return entry != null ? entry.get() : null;
+    }
+
+    static int size() {
+        purgeCleared();
+        return ENTRIES.size();
+    }
+
+    static void clear() {
+        ENTRIES.clear();
+        HITS.reset();
+        MISSES.reset();
+    }
+
+    static CacheStats stats() {
+        long hits = HITS.sum();
+        long misses = MISSES.sum();
+        long lookups = hits + misses;
+        return new CacheStats(size(), hits, misses, lookups > 0 ? (double) hits / lookups : 0d);
+    }
+
+    /**
+     * Content address of a domain configuration: SHA-256 over the match mode, whether
+     * <code>tenant/domain</code> entries are scoped, and the sorted domain list. Two configurations with the same domains produce the same key regardless of
+     * the order they were listed in.
+     */
+    static String canonicalKey(Set<String> domains, DomainMatchMode mode, boolean tenantScoped) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        digest.update(mode.name().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) (tenantScoped ? 'T' : '-'));
+        digest.update((byte) '\n');
+        domains.stream().sorted().forEach(domain -> {
+            digest.update(domain.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        });
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void purgeCleared() {
+        Entry cleared;
+        while ((cleared = (Entry) CLEARED.poll()) != null) {
+            ENTRIES.remove(cleared.key, cleared);
+        }
+    }
+
+    record CacheStats(int size, long hits, long misses, double hitRate) {
+    }
+
+    private static final class Entry extends WeakReference<DomainMatcher> {
+        private final String key;
+
+        Entry(String key, DomainMatcher matcher) {
+            super(matcher, CLEARED);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package de.treestack.auth;
+
+import jakarta.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-mapper streaming statistics about the email domains seen during login. Domain frequencies
+ * are estimated with a count-min sketch and the most frequent domains are tracked in a small
+ * top-K table, so memory stays fixed no matter how many distinct domains are observed. Logins
+ * that ended in the fallback branch are tracked a second time on their own, so the domains
+ * missing from the allowed list can be told apart from the ones that matched.
+ *
+ * <p>Recording is non-blocking: counters are atomic, the top-K table only holds domain names and
+ * is read without locking for domains already tracked, and it is only filled or reorganized by
+ * whichever thread wins a {@link ReentrantLock#tryLock()}; all other threads skip the update.
+ * Each sketch row hashes the domain's bytes with its own seed, so domains whose
+ * {@link String#hashCode()} collides are not counted together in every row.</p>
+ */
+final class DomainStatistics {
+
+    static final int SKETCH_DEPTH = 4;
+    static final int SKETCH_WIDTH = 1 << 10;
+    static final int TOP_K = 20;
+
+    private static final MapperStateMap<DomainStatistics> BY_MAPPER = MapperStateMap.create(id -> new DomainStatistics());
+
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final HeavyHitters allDomains = new HeavyHitters();
+    private final HeavyHitters fallbackDomains = new HeavyHitters();
+
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder fallback = new LongAdder();
+
+    /**
+     * Statistics for the given mapper, or <code>null</code> if the mapper has no id (e.g. it
+     * was never persisted).
+     */
+    static @Nullable DomainStatistics forMapper(@Nullable String mapperId) {
+        return mapperId != null ? BY_MAPPER.get(mapperId) : null;
+    }
+
+    static @Nullable DomainStatistics find(String mapperId) {
+        return BY_MAPPER.find(mapperId);
+    }
+
+    static void clear() {
+        BY_MAPPER.clear();
+    }
+
+    void record(String domain, boolean isMatch) {
+        evaluations.increment();
+        (isMatch ? matched : fallback).increment();
+
+        allDomains.add(domain);
+        if (!isMatch) {
+            fallbackDomains.add(domain);
+        }
+    }
+
+    long estimate(String domain) {
+        return allDomains.estimate(domain);
+    }
+
+    long estimateFallback(String domain) {
+        return fallbackDomains.estimate(domain);
+    }
+
+    Snapshot snapshot() {
+        long total = evaluations.sum();
+        long matches = matched.sum();
+        return new Snapshot(total, matches, fallback.sum(), total > 0 ? (double) matches / total : 0d,
+                allDomains.top(), fallbackDomains.top());
+    }
+
+    /**
+     * A count-min sketch plus the top-K domains by estimated frequency.
+     */
+    private static final class HeavyHitters {
+        private final AtomicLongArray sketch = new AtomicLongArray(SKETCH_DEPTH * SKETCH_WIDTH);
+        private final Set<String> topDomains = ConcurrentHashMap.newKeySet();
+        private final ReentrantLock evictionLock = new ReentrantLock();
+        private volatile long admissionThreshold;
+
+        void add(String domain) {
+            long estimate = increment(domain);
+            // Tracked domains need no update: counts are read from the sketch
+            if (topDomains.contains(domain)) {
+                return;
+            }
+            if ((topDomains.size() < TOP_K || estimate > admissionThreshold) && evictionLock.tryLock()) {
+                try {
+                    // Re-check under the lock, another thread may have filled the table meanwhile
+                    if (topDomains.contains(domain)) {
+                        return;
+                    }
+                    if (topDomains.size() < TOP_K) {
+                        topDomains.add(domain);
+                    } else {
+                        admit(domain, estimate);
+                    }
+                } finally {
+                    evictionLock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Replace the least frequent tracked domain with the given one, using current estimates
+         * from the sketch. Must hold the eviction lock.
+         */
+        private void admit(String domain, long estimate) {
+            DomainCount least = topDomains.stream()
+                    .map(tracked -> new DomainCount(tracked, estimate(tracked)))
+                    .min(Comparator.comparingLong(DomainCount::count))
+                    .orElse(null);
+            if (least != null && least.count() < estimate) {
+                topDomains.remove(least.domain());
+                topDomains.add(domain);
+            }
+            admissionThreshold = topDomains.stream().mapToLong(this::estimate).min().orElse(0);
+        }
+
+        /**
+         * Add one occurrence to the sketch and return the new frequency estimate.
+         */
+        private long increment(String domain) {
+            byte[] bytes = domain.getBytes(StandardCharsets.UTF_8);
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < SKETCH_DEPTH; row++) {
+                long count = sketch.incrementAndGet(row * SKETCH_WIDTH + bucket(bytes, row));
+                estimate = Math.min(estimate, count);
+            }
+            return estimate;
+        }
+
+        long estimate(String domain) {
+            byte[] bytes = domain.getBytes(StandardCharsets.UTF_8);
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < SKETCH_DEPTH; row++) {
+                estimate = Math.min(estimate, sketch.get(row * SKETCH_WIDTH + bucket(bytes, row)));
+            }
+            return estimate;
+        }
+
+        List<DomainCount> top() {
+            return topDomains.stream()
+                    .map(domain -> new DomainCount(domain, estimate(domain)))
+                    .sorted(Comparator.comparingLong(DomainCount::count).reversed())
+                    .toList();
+        }
+    }
+
+    /**
+     * Seeded 64-bit FNV-1a over the domain's bytes, followed by a murmur3 finalizer so the low
+     * bits used for the bucket depend on every input byte.
+     */
+    private static int bucket(byte[] bytes, int row) {
+        long h = FNV_OFFSET_BASIS ^ SEEDS[row];
+        for (byte b : bytes) {
+            h ^= b & 0xFF;
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h & (SKETCH_WIDTH - 1);
+    }
+
+    /**
+     * @param topDomains         most frequent domains over all logins
+     * @param topFallbackDomains most frequent domains of logins that got the fallback role
+     */
+    record Snapshot(
+            long evaluations,
+            long matched,
+            long fallback,
+            double matchRatio,
+            List<DomainCount> topDomains,
+            List<DomainCount> topFallbackDomains
+    ) {
+    }
+
+    record DomainCount(String domain, long count) {
+    }
+}
@@ -0,0 +1,81 @@
+package de.treestack.auth;
+
+import jdk.jfr.*;
+import org.keycloak.models.IdentityProviderMapperModel;
+import org.keycloak.models.RealmModel;
+
+/**
+ * Java Flight Recorder events emitted by {@link DomainRoleIdpMapper}. All events are disabled by
+ * default and have to be enabled in the recording settings (.jfc) by their name, e.g.
+ * <code>de.treestack.auth.DomainMatch</code>. While disabled, the instrumentation in the mapper
+ * reduces to an allocation the JIT eliminates.
+ */
+final class MapperEvents {
+
+    private static final String CATEGORY_KEYCLOAK = "Keycloak";
+    private static final String CATEGORY_MAPPER = "Domain Role IdP Mapper";
+
+    private MapperEvents() {
+    }
+
+    @Category({CATEGORY_KEYCLOAK, CATEGORY_MAPPER})
+    @Enabled(false)
+    @StackTrace(false)
+    abstract static class MapperEvent extends Event {
+        @Label("Realm")
+        String realm;
+
+        @Label("Mapper ID")
+        String mapperId;
+
+        void describe(RealmModel realmModel, IdentityProviderMapperModel mapperModel) {
+            realm = realmModel.getName();
+            mapperId = mapperModel.getId();
+        }
+    }
+
+    @Name("de.treestack.auth.ConfigLoad")
+    @Label("Mapper Config Load")
+    @Description("Loading and compiling the mapper configuration, including role lookups")
+    static final class ConfigLoad extends MapperEvent {
+    }
+
+    @Name("de.treestack.auth.DomainMatch")
+    @Label("Mapper Domain Match")
+    @Description("Matching the user's email domain against the configured domains")
+    static final class DomainMatch extends MapperEvent {
+        @Label("Match Mode")
+        String mode;
+
+        @Label("Engine")
+        String engine;
+
+        @Label("Pattern Count")
+        int patternCount;
+
+        @Label("Matched")
+        boolean matched;
+    }
+
+    @Name("de.treestack.auth.RoleResolution")
+    @Label("Mapper Role Resolution")
+    @Description("Resolving a configured role name to a realm or client role")
+    static final class RoleResolution extends MapperEvent {
+        @Label("Role Name")
+        String roleName;
+
+        @Label("Resolved")
+        boolean resolved;
+    }
+
+    @Name("de.treestack.auth.RoleGrant")
+    @Label("Mapper Role Grant")
+    @Description("Checking and granting the selected role to the user")
+    static final class RoleGrant extends MapperEvent {
+        @Label("Role Name")
+        String roleName;
+
+        @Label("Granted")
+        boolean granted;
+    }
+}
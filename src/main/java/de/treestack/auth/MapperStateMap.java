@@ -0,0 +1,158 @@
+package de.treestack.auth;
+
+import jakarta.annotation.Nullable;
+import org.jboss.logging.Logger;
+import org.keycloak.models.IdentityProviderMapperModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.provider.ProviderEvent;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Node-local state kept per mapper id, such as compiled rules and login statistics. Keycloak
+ * publishes no event when a single IdP mapper is deleted, so entries expire once no login used
+ * them for {@link #EXPIRY_HOURS} hours. When a realm or identity provider is removed, the state
+ * of its mappers is dropped right away.
+ *
+ * <p>Reads of existing entries are a plain map lookup. The access time is only written once per
+ * minute per entry, and idle entries are swept at most once an hour by whichever
+ * login notices the sweep is due.</p>
+ */
+final class MapperStateMap<T> {
+
+    private static final Logger LOG = Logger.getLogger(MapperStateMap.class);
+
+    static final long EXPIRY_HOURS = 24;
+    private static final long EXPIRY_NANOS = TimeUnit.HOURS.toNanos(EXPIRY_HOURS);
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.HOURS.toNanos(1);
+    private static final long TOUCH_GRANULARITY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final List<MapperStateMap<?>> REGISTERED = new CopyOnWriteArrayList<>();
+
+    private final ConcurrentMap<String, Entry<T>> entries = new ConcurrentHashMap<>();
+    private final Function<String, T> factory;
+    private final long expiryNanos;
+    private final LongSupplier clock;
+    private final AtomicLong nextSweep;
+
+    private MapperStateMap(Function<String, T> factory, long expiryNanos, LongSupplier clock) {
+        this.factory = factory;
+        this.expiryNanos = expiryNanos;
+        this.clock = clock;
+        this.nextSweep = new AtomicLong(clock.getAsLong() + SWEEP_INTERVAL_NANOS);
+    }
+
+    /**
+     * A map whose entries are dropped on realm or identity provider removal and after
+     * {@link #EXPIRY_HOURS} hours without access.
+     */
+    static <T> MapperStateMap<T> create(Function<String, T> factory) {
+        MapperStateMap<T> map = new MapperStateMap<>(factory, EXPIRY_NANOS, System::nanoTime);
+        REGISTERED.add(map);
+        return map;
+    }
+
+    static <T> MapperStateMap<T> create(Function<String, T> factory, long expiryNanos, LongSupplier clock) {
+        return new MapperStateMap<>(factory, expiryNanos, clock);
+    }
+
+    /**
+     * The state of the given mapper, created on first access. Counts as an access for expiry.
+     */
+    T get(String mapperId) {
+        long now = clock.getAsLong();
+        sweepIfDue(now);
+
+        Entry<T> entry = entries.get(mapperId);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(mapperId, id -> new Entry<>(factory.apply(id), now));
+        }
+        entry.touch(now);
+        return entry.value;
+    }
+
+    /**
+     * The state of the given mapper, if present. Does not count as an access.
+     */
+    @Nullable T find(String mapperId) {
+        Entry<T> entry = entries.get(mapperId);
+        return entry != null ? entry.value : null;
+    }
+
+    void remove(String mapperId) {
+        entries.remove(mapperId);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due >= 0 && nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            sweep(now);
+        }
+    }
+
+    void sweep(long now) {
+        entries.values().removeIf(entry -> now - entry.lastAccess > expiryNanos);
+    }
+
+    /**
+     * Drop the state of the given mapper from all registered maps.
+     */
+    static void removeMapper(String mapperId) {
+        REGISTERED.forEach(map -> map.remove(mapperId));
+    }
+
+    /**
+     * Provider event listener dropping the state of all mappers of a removed realm or identity
+     * provider. Mappers that can no longer be listed at that point expire instead.
+     */
+    static void onEvent(ProviderEvent event) {
+        try {
+            Stream<IdentityProviderMapperModel> removed;
+            if (event instanceof RealmModel.RealmRemovedEvent realmRemoved) {
+                removed = realmRemoved.getRealm().getIdentityProviderMappersStream();
+            } else if (event instanceof RealmModel.IdentityProviderRemovedEvent idpRemoved) {
+                removed = idpRemoved.getRealm().getIdentityProviderMappersByAliasStream(
+                        idpRemoved.getRemovedIdentityProvider().getAlias());
+            } else {
+                return;
+            }
+            removed.filter(mapper -> DomainRoleIdpMapper.PROVIDER_ID.equals(mapper.getIdentityProviderMapper()))
+                    .map(IdentityProviderMapperModel::getId)
+                    .forEach(MapperStateMap::removeMapper);
+        } catch (RuntimeException e) {
+            LOG.debugf("Could not list removed mappers, their state will expire instead: %s", e.getMessage());
+        }
+    }
+
+    private static final class Entry<T> {
+        private final T value;
+        private volatile long lastAccess;
+
+        Entry(T value, long now) {
+            this.value = value;
+            this.lastAccess = now;
+        }
+
+        void touch(long now) {
+            if (now - lastAccess > TOUCH_GRANULARITY_NANOS) {
+                lastAccess = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package de.treestack.auth;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Optional tracing of the mapper pipeline. If the OpenTelemetry API is on the classpath (as in
+ * Keycloak 26+ with tracing enabled), spans are created through {@link OpenTelemetryTracing};
+ * otherwise all calls go to a no-op implementation and the OpenTelemetry classes are never loaded.
+ */
+final class MapperTracing {
+
+    private static final Logger LOG = Logger.getLogger(MapperTracing.class);
+
+    static final String ATTR_MATCH_MODE = "mapper.match_mode";
+    static final String ATTR_ENGINE = "mapper.engine";
+    static final String ATTR_OUTCOME = "mapper.outcome";
+    static final String ATTR_ROLE_GRANTED = "mapper.role_granted";
+
+    private static final Tracer TRACER = detect();
+
+    private MapperTracing() {
+    }
+
+    /**
+     * Start a span as child of the current span and make it current until it is closed.
+     */
+    static Span startSpan(String name) {
+        return TRACER.startSpan(name);
+    }
+
+    /**
+     * The span current on this thread (e.g. the one opened by {@link #startSpan(String)}), or a
+     * no-op span if tracing is unavailable.
+     */
+    static Span currentSpan() {
+        return TRACER.currentSpan();
+    }
+
+    private static Tracer detect() {
+        try {
+            Class.forName("io.opentelemetry.api.GlobalOpenTelemetry", false, MapperTracing.class.getClassLoader());
+            LOG.debug("OpenTelemetry API found; mapper tracing available");
+            return new OpenTelemetryTracing();
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOG.debug("OpenTelemetry API not found; mapper tracing disabled");
+            return NoopTracer.INSTANCE;
+        }
+    }
+
+    interface Tracer {
+        Span startSpan(String name);
+
+        Span currentSpan();
+    }
+
+    interface Span extends AutoCloseable {
+        Span setAttribute(String key, String value);
+
+        Span setAttribute(String key, boolean value);
+
+        @Override
+        void close();
+    }
+
+    enum NoopTracer implements Tracer, Span {
+        INSTANCE;
+
+        @Override
+        public Span startSpan(String name) {
+            return this;
+        }
+
+        @Override
+        public Span currentSpan() {
+            return this;
+        }
+
+        @Override
+        public Span setAttribute(String key, String value) {
+            return this;
+        }
+
+        @Override
+        public Span setAttribute(String key, boolean value) {
+            return this;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package de.treestack.auth;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.context.Scope;
+
+/**
+ * {@link MapperTracing.Tracer} backed by the global OpenTelemetry instance. Only loaded if the
+ * OpenTelemetry API is present; see {@link MapperTracing}.
+ */
+final class OpenTelemetryTracing implements MapperTracing.Tracer {
+
+    static final String INSTRUMENTATION_NAME = "de.treestack.auth.domain-role-idp-mapper";
+
+    @Override
+    public MapperTracing.Span startSpan(String name) {
+        io.opentelemetry.api.trace.Span span = GlobalOpenTelemetry.getTracer(INSTRUMENTATION_NAME)
+                .spanBuilder(name)
+                .startSpan();
+        return new OtelSpan(span, span.makeCurrent());
+    }
+
+    @Override
+    public MapperTracing.Span currentSpan() {
+        return new OtelSpan(io.opentelemetry.api.trace.Span.current(), null);
+    }
+
+    private record OtelSpan(io.opentelemetry.api.trace.Span span, Scope scope) implements MapperTracing.Span {
+
+        @Override
+        public MapperTracing.Span setAttribute(String key, String value) {
+            if (value != null && span.isRecording()) {
+                span.setAttribute(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public MapperTracing.Span setAttribute(String key, boolean value) {
+            if (span.isRecording()) {
+                span.setAttribute(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * End the span and restore the previous context. A no-op for handles obtained through
+         * {@link #currentSpan()}, which are owned by whoever started the span.
+         */
+        @Override
+        public void close() {
+            if (scope != null) {
+                scope.close();
+                span.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package de.treestack.auth;
+
+import jakarta.annotation.Nullable;
+import org.jboss.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Public Suffix List (<a href="https://publicsuffix.org">publicsuffix.org</a>) used to reduce a
+ * domain to its registrable domain, e.g. <code>mail.eu.acme.co.uk</code> to <code>acme.co.uk</code>.
+ *
+ * <p>The list is bundled as a gzipped resource (ICANN and private sections) and parsed into a
+ * trie of DNS labels on first use, so it costs nothing at startup and no network access is
+ * needed. Rules are stored in punycode, matching the form produced by {@link DomainNames}.</p>
+ */
+final class PublicSuffixList {
+
+    private static final Logger LOG = Logger.getLogger(PublicSuffixList.class);
+
+    static final String RESOURCE = "public_suffix_list.dat.gz";
+
+    private final Node root;
+
+    private PublicSuffixList(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * The bundled list, loaded on first access.
+     */
+    static PublicSuffixList get() {
+        return Holder.INSTANCE;
+    }
+
+    static PublicSuffixList parse(BufferedReader reader) throws IOException {
+        Node root = new Node();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String rule = line.strip();
+            if (rule.isEmpty() || rule.startsWith("//")) continue;
+
+            boolean exception = rule.startsWith("!");
+            String[] labels = DomainNames.canonical(exception ? rule.substring(1) : rule).split("\\.");
+            Node node = root;
+            for (int i = labels.length - 1; i >= 0; i--) {
+                node = node.children.computeIfAbsent(labels[i], l -> new Node());
+            }
+            if (exception) {
+                node.exception = true;
+            } else {
+                node.rule = true;
+            }
+        }
+        return new PublicSuffixList(root);
+    }
+
+    /**
+     * The registrable domain (public suffix plus one label) of a canonical domain name, or
+     * <code>null</code> if the domain is itself a public suffix.
+     */
+    @Nullable String registrableDomain(String domain) {
+        String[] labels = domain.split("\\.", -1);
+        int suffixLength = publicSuffixLength(labels);
+        if (labels.length <= suffixLength) {
+            return null;
+        }
+        int start = labels.length - suffixLength - 1;
+        return String.join(".", Arrays.copyOfRange(labels, start, labels.length));
+    }
+
+    /**
+     * Number of labels of the longest matching rule. Exception rules take precedence, and the
+     * implicit default rule <code>*</code> makes every top-level label a public suffix.
+     */
+    private int publicSuffixLength(String[] labels) {
+        int length = 1;
+        Node node = root;
+        for (int depth = 0; depth < labels.length; depth++) {
+            String label = labels[labels.length - 1 - depth];
+            if (label.isEmpty()) {
+                return labels.length;
+            }
+
+            Node wildcard = node.children.get("*");
+            if (wildcard != null && wildcard.rule) {
+                length = Math.max(length, depth + 1);
+            }
+
+            Node child = node.children.get(label);
+            if (child == null) {
+                break;
+            }
+            if (child.exception) {
+                return depth;
+            }
+            if (child.rule) {
+                length = Math.max(length, depth + 1);
+            }
+            node = child;
+        }
+        return length;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private boolean rule;
+        private boolean exception;
+    }
+
+    private static final class Holder {
+        private static final PublicSuffixList INSTANCE = load();
+
+        private static PublicSuffixList load() {
+            long start = System.nanoTime();
+            try (InputStream in = PublicSuffixList.class.getResourceAsStream(RESOURCE)) {
+                if (in == null) {
+                    throw new IllegalStateException("Bundled public suffix list not found: " + RESOURCE);
+                }
+                PublicSuffixList list = parse(new BufferedReader(
+                        new InputStreamReader(new GZIPInputStream(in), StandardCharsets.UTF_8)));
+                LOG.debugf("Loaded public suffix list in %d ms", (System.nanoTime() - start) / 1_000_000);
+                return list;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read bundled public suffix list", e);
+            }
+        }
+    }
+}
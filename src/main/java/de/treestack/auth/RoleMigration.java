@@ -0,0 +1,296 @@
+package de.treestack.auth;
+
+import jakarta.annotation.Nullable;
+import org.jboss.logging.Logger;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background job moving the direct members of one role to another, e.g. after the matched or
+ * fallback role of a mapper was changed. Members are read and updated in pages of
+ * <code>batchSize</code> users, each page in its own transaction, with a pause between pages so
+ * large realms are never locked by one long-running transaction. Only members linked to the
+ * mapper's identity provider are moved; local users and users of other identity providers keep
+ * their roles and are counted as skipped. If a page fails, it is retried with one transaction per
+ * user so a single broken user cannot roll back the others; users that still cannot be moved keep
+ * the old role and are counted as failed.
+ *
+ * <p>Migrations run one at a time on a single background thread per node. Progress is kept in
+ * memory and can be read while the job is running.</p>
+ */
+final class RoleMigration implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(RoleMigration.class);
+
+    static final int DEFAULT_BATCH_SIZE = 500;
+    static final long DEFAULT_PAUSE_MILLIS = 100;
+
+    private static final ConcurrentMap<String, RoleMigration> BY_MAPPER = new ConcurrentHashMap<>();
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "domain-role-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final KeycloakSessionFactory sessionFactory;
+    private final String realmId;
+    private final String mapperId;
+    private final String identityProviderAlias;
+    private final String fromRole;
+    private final String toRole;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    private final AtomicLong migrated = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final long queuedAt = System.currentTimeMillis();
+    private volatile State state = State.QUEUED;
+    private volatile @Nullable Long finishedAt;
+    private volatile @Nullable String error;
+
+    RoleMigration(
+            KeycloakSessionFactory sessionFactory,
+            String realmId,
+            String mapperId,
+            String identityProviderAlias,
+            String fromRole,
+            String toRole,
+            int batchSize,
+            long pauseMillis) {
+        this.sessionFactory = sessionFactory;
+        this.realmId = realmId;
+        this.mapperId = mapperId;
+        this.identityProviderAlias = identityProviderAlias;
+        this.fromRole = fromRole;
+        this.toRole = toRole;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Queue the migration unless another one is still active for the same mapper.
+     *
+     * @return <code>false</code> if a migration for the mapper is already queued or running
+     */
+    static boolean submit(RoleMigration migration) {
+        return submit(migration, EXECUTOR);
+    }
+
+    static boolean submit(RoleMigration migration, Executor executor) {
+        RoleMigration previous = BY_MAPPER.compute(migration.mapperId, (id, existing) ->
+                existing != null && existing.isActive() ? existing : migration);
+        if (previous != migration) {
+            return false;
+        }
+        executor.execute(migration);
+        return true;
+    }
+
+    static @Nullable RoleMigration find(String mapperId) {
+        return BY_MAPPER.get(mapperId);
+    }
+
+    static void clear() {
+        BY_MAPPER.clear();
+    }
+
+    boolean isActive() {
+        return state == State.QUEUED || state == State.RUNNING;
+    }
+
+    @Override
+    public void run() {
+        state = State.RUNNING;
+        LOG.infof("Starting migration of role '%s' to '%s' for mapper %s in realm %s", fromRole, toRole, mapperId, realmId);
+        try {
+            boolean more = true;
+            while (more) {
+                BatchResult result;
+                try {
+                    result = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, this::migrateBatch);
+                } catch (RuntimeException e) {
+                    // A failing user usually leaves the whole transaction rollback-only, so redo the page user by
+                    // user. If the realm or a role is gone, reading the page fails again and ends the migration.
+                    LOG.warnf("Batch %d of migration for mapper %s failed, retrying its users one by one: %s",
+                            batches.get() + 1, mapperId, e.getMessage());
+                    result = migrateUsersIndividually();
+                }
+                // Counters only move once the batch is committed
+                migrated.addAndGet(result.migrated());
+                skipped.addAndGet(result.skipped());
+                failed.addAndGet(result.failed());
+                batches.incrementAndGet();
+                LOG.debugf("Migration for mapper %s: batch %d done, %d migrated, %d skipped, %d failed",
+                        mapperId, batches.get(), migrated.get(), skipped.get(), failed.get());
+
+                more = result.hasMore();
+                if (more) {
+                    Thread.sleep(pauseMillis);
+                }
+            }
+            state = State.COMPLETED;
+            if (failed.get() > 0) {
+                LOG.warnf("Finished migration of role '%s' to '%s' for mapper %s: %d migrated, %d skipped, %d failed",
+                        fromRole, toRole, mapperId, migrated.get(), skipped.get(), failed.get());
+            } else {
+                LOG.infof("Finished migration of role '%s' to '%s' for mapper %s: %d migrated, %d skipped",
+                        fromRole, toRole, mapperId, migrated.get(), skipped.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(e);
+        } finally {
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    private void fail(Exception e) {
+        state = State.FAILED;
+        error = e.getMessage();
+        LOG.errorf(e, "Migration of role '%s' to '%s' for mapper %s failed after %d users",
+                fromRole, toRole, mapperId, migrated.get());
+    }
+
+    /**
+     * Move one page of members from the old to the new role in the given session's transaction.
+     */
+    BatchResult migrateBatch(KeycloakSession session) {
+        RealmModel realm = realm(session);
+        RoleModel source = role(realm, fromRole);
+        RoleModel target = role(realm, toRole);
+
+        List<UserModel> members = nextPage(session, realm, source);
+        int moved = 0;
+        for (UserModel user : members) {
+            if (migrateUser(session, realm, user, source, target)) {
+                moved++;
+            }
+        }
+        return new BatchResult(moved, members.size() - moved, 0, members.size() == batchSize);
+    }
+
+    /**
+     * Move the current page again with one transaction per user, so a user that cannot be
+     * migrated fails without rolling back the others.
+     */
+    private BatchResult migrateUsersIndividually() {
+        List<String> userIds = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session -> {
+            RealmModel realm = realm(session);
+            return nextPage(session, realm, role(realm, fromRole)).stream().map(UserModel::getId).toList();
+        });
+
+        int moved = 0;
+        int notMoved = 0;
+        for (String userId : userIds) {
+            try {
+                if (KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, session -> migrateUser(session, userId))) {
+                    moved++;
+                }
+            } catch (RuntimeException e) {
+                notMoved++;
+                LOG.warnf(e, "Could not migrate user %s from role '%s' to '%s'", userId, fromRole, toRole);
+            }
+        }
+        return new BatchResult(moved, userIds.size() - moved - notMoved, notMoved, userIds.size() == batchSize);
+    }
+
+    private boolean migrateUser(KeycloakSession session, String userId) {
+        RealmModel realm = realm(session);
+        UserModel user = session.users().getUserById(realm, userId);
+        return user != null && migrateUser(session, realm, user, role(realm, fromRole), role(realm, toRole));
+    }
+
+    /**
+     * Move a single user, unless the user is not linked to the mapper's identity provider and so
+     * never got the role through this mapper.
+     *
+     * @return whether the user was moved
+     */
+    private boolean migrateUser(KeycloakSession session, RealmModel realm, UserModel user, RoleModel source, RoleModel target) {
+        if (session.users().getFederatedIdentity(realm, user, identityProviderAlias) == null) {
+            LOG.debugf("Skipping user %s: not linked to identity provider '%s'", user.getUsername(), identityProviderAlias);
+            return false;
+        }
+        if (!user.hasRole(target)) {
+            user.grantRole(target);
+        }
+        user.deleteRoleMapping(source);
+        return true;
+    }
+
+    private List<UserModel> nextPage(KeycloakSession session, RealmModel realm, RoleModel source) {
+        // Migrated users drop out of the member list, so only skipped and failed users shift the offset
+        return session.users()
+                .getRoleMembersStream(realm, source, (int) (skipped.get() + failed.get()), batchSize)
+                .toList();
+    }
+
+    private RealmModel realm(KeycloakSession session) {
+        RealmModel realm = session.realms().getRealm(realmId);
+        if (realm == null) {
+            throw new IllegalStateException("Realm " + realmId + " no longer exists");
+        }
+        return realm;
+    }
+
+    private static RoleModel role(RealmModel realm, String roleName) {
+        RoleModel role = DomainRoleIdpMapper.findRole(realm, roleName);
+        if (role == null) {
+            throw new IllegalStateException("Role '" + roleName + "' no longer exists");
+        }
+        return role;
+    }
+
+    Progress progress() {
+        return new Progress(mapperId, fromRole, toRole, state, migrated.get(), skipped.get(), failed.get(),
+                batches.get(), queuedAt, finishedAt, error);
+    }
+
+    /**
+     * Outcome of one committed page of members.
+     */
+    record BatchResult(int migrated, int skipped, int failed, boolean hasMore) {
+    }
+
+    /**
+     * @param skipped users not linked to the mapper's identity provider, left untouched
+     * @param failed  users that could not be moved and still have the old role
+     */
+    record Progress(
+            String mapperId,
+            String fromRole,
+            String toRole,
+            State state,
+            long migrated,
+            long skipped,
+            long failed,
+            long batches,
+            long queuedAt,
+            @Nullable Long finishedAt,
+            @Nullable String error
+    ) {
+    }
+}
@@ -0,0 +1,150 @@
+package de.treestack.auth;
+
+import jakarta.annotation.Nullable;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shadow evaluation of a candidate domain configuration. On a sample of logins the candidate
+ * matcher is evaluated after the live one; its decision is never applied, only compared with the
+ * live decision.
+ * Per mapper, the number of agreements and disagreements and the time spent in both matchers
+ * are kept in fixed-size counters.
+ *
+ * <p>Counters start over whenever the live or candidate configuration changes, so the numbers
+ * always describe the pair currently configured.</p>
+ */
+final class ShadowEvaluation {
+
+    private static final MapperStateMap<ShadowEvaluation> BY_MAPPER = MapperStateMap.create(id -> new ShadowEvaluation());
+
+    private final AtomicReference<Counters> counters = new AtomicReference<>();
+
+    /**
+     * Shadow statistics for the given mapper, or <code>null</code> if the mapper has no id.
+     */
+    static @Nullable ShadowEvaluation forMapper(@Nullable String mapperId) {
+        return mapperId != null ? BY_MAPPER.get(mapperId) : null;
+    }
+
+    static @Nullable ShadowEvaluation find(String mapperId) {
+        return BY_MAPPER.find(mapperId);
+    }
+
+    static void clear() {
+        BY_MAPPER.clear();
+    }
+
+    /**
+     * Decide whether the current login is part of the shadow sample.
+     *
+     * @param samplePercent share of logins to sample, from 0 to 100
+     */
+    static boolean sample(double samplePercent) {
+        return samplePercent >= 100d
+                || (samplePercent > 0d && ThreadLocalRandom.current().nextDouble(100d) < samplePercent);
+    }
+
+    /**
+     * Evaluate the candidate matcher against the login's tenant and domain and record whether it
+     * agrees with the decision the live matcher already made, and how long each took.
+     *
+     * @param liveMatch decision of the live matcher for this login
+     * @param liveNanos time the live matcher took for it
+     */
+    void evaluate(
+            DomainMatcher live,
+            boolean liveMatch,
+            long liveNanos,
+            DomainMatcher candidate,
+            @Nullable String tenant,
+            String domain) {
+
+        long start = System.nanoTime();
+        boolean candidateMatch = candidate.matches(tenant, domain);
+        long candidateNanos = System.nanoTime() - start;
+
+        Counters current = countersFor(live, candidate);
+        current.samples.increment();
+        if (liveMatch == candidateMatch) {
+            current.agreements.increment();
+        } else if (liveMatch) {
+            current.matchedOnlyLive.increment();
+        } else {
+            current.matchedOnlyCandidate.increment();
+        }
+        current.liveNanos.add(liveNanos);
+        current.candidateNanos.add(candidateNanos);
+    }
+
+    private Counters countersFor(DomainMatcher live, DomainMatcher candidate) {
+        Counters current = counters.get();
+        while (current == null || !current.describes(live, candidate)) {
+            Counters fresh = new Counters(live, candidate);
+            if (counters.compareAndSet(current, fresh)) {
+                return fresh;
+            }
+            current = counters.get();
+        }
+        return current;
+    }
+
+    Snapshot snapshot() {
+        Counters current = counters.get();
+        if (current == null) {
+            return new Snapshot(null, null, 0, 0, 0, 0, 0d, 0d);
+        }
+        long samples = current.samples.sum();
+        return new Snapshot(
+                current.live.engine(),
+                current.candidate.engine(),
+                samples,
+                current.agreements.sum(),
+                current.matchedOnlyLive.sum(),
+                current.matchedOnlyCandidate.sum(),
+                samples > 0 ? (double) current.liveNanos.sum() / samples : 0d,
+                samples > 0 ? (double) current.candidateNanos.sum() / samples : 0d);
+    }
+
+    private static final class Counters {
+        private final DomainMatcher live;
+        private final DomainMatcher candidate;
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder agreements = new LongAdder();
+        private final LongAdder matchedOnlyLive = new LongAdder();
+        private final LongAdder matchedOnlyCandidate = new LongAdder();
+        private final LongAdder liveNanos = new LongAdder();
+        private final LongAdder candidateNanos = new LongAdder();
+
+        Counters(DomainMatcher live, DomainMatcher candidate) {
+            this.live = live;
+            this.candidate = candidate;
+        }
+
+        boolean describes(DomainMatcher live, DomainMatcher candidate) {
+            return isSameConfig(this.live, live) && isSameConfig(this.candidate, candidate);
+        }
+
+        private static boolean isSameConfig(DomainMatcher a, DomainMatcher b) {
+            return a == b || (a.mode() == b.mode() && a.domains().equals(b.domains()));
+        }
+    }
+
+    /**
+     * @param matchedOnlyLive      samples the live config matched but the candidate did not
+     * @param matchedOnlyCandidate samples the candidate matched but the live config did not
+     */
+    record Snapshot(
+            @Nullable String liveEngine,
+            @Nullable String candidateEngine,
+            long samples,
+            long agreements,
+            long matchedOnlyLive,
+            long matchedOnlyCandidate,
+            double meanLiveNanos,
+            double meanCandidateNanos
+    ) {
+    }
+}
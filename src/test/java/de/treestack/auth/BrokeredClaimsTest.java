@@ -0,0 +1,61 @@
+package de.treestack.auth;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.keycloak.broker.oidc.OIDCIdentityProvider;
+import org.keycloak.broker.provider.BrokeredIdentityContext;
+import org.keycloak.representations.IDToken;
+import org.keycloak.representations.JsonWebToken;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BrokeredClaimsTest {
+
+    @Test
+    void when_claimInValidatedToken_expect_tokenValue() {
+        // Keycloak's OIDC broker stores the validated ID token as a plain JsonWebToken
+        JsonWebToken token = new JsonWebToken();
+        token.setOtherClaims("email", "alice@example.com");
+        token.setOtherClaims("email_verified", true);
+        token.setOtherClaims("tid", "tenant-a");
+        BrokeredIdentityContext context = new BrokeredIdentityContext("broker-id");
+        context.getContextData().put(OIDCIdentityProvider.VALIDATED_ID_TOKEN, token);
+
+        assertEquals("alice@example.com", BrokeredClaims.get(context, BrokeredClaims.EMAIL));
+        assertEquals("true", BrokeredClaims.get(context, BrokeredClaims.EMAIL_VERIFIED));
+        assertEquals("tenant-a", BrokeredClaims.get(context, "tid"));
+        assertNull(BrokeredClaims.get(context, "hd"));
+    }
+
+    @Test
+    void when_claimOnlyInUserInfo_expect_userInfoValue() throws Exception {
+        BrokeredIdentityContext context = new BrokeredIdentityContext("broker-id");
+        context.getContextData().put(OIDCIdentityProvider.VALIDATED_ID_TOKEN, new JsonWebToken());
+        context.getContextData().put(OIDCIdentityProvider.USER_INFO,
+                new ObjectMapper().readTree("{\"hd\":\"example.com\",\"upn\":null}"));
+
+        assertEquals("example.com", BrokeredClaims.get(context, "hd"));
+        assertNull(BrokeredClaims.get(context, "upn"));
+    }
+
+    @Test
+    void when_idTokenRepresentation_expect_standardClaimsFromFields() {
+        IDToken token = new IDToken();
+        token.setEmail("alice@example.com");
+        token.setEmailVerified(false);
+        BrokeredIdentityContext context = new BrokeredIdentityContext("broker-id");
+        context.getContextData().put(OIDCIdentityProvider.VALIDATED_ID_TOKEN, token);
+
+        assertEquals("alice@example.com", BrokeredClaims.get(context, BrokeredClaims.EMAIL));
+        assertEquals("false", BrokeredClaims.get(context, BrokeredClaims.EMAIL_VERIFIED));
+    }
+
+    @Test
+    void when_noTokenData_expect_emailFromContextOnly() {
+        BrokeredIdentityContext context = new BrokeredIdentityContext("broker-id");
+        context.setEmail("bob@example.com");
+
+        assertEquals("bob@example.com", BrokeredClaims.get(context, BrokeredClaims.EMAIL));
+        assertNull(BrokeredClaims.get(context, BrokeredClaims.EMAIL_VERIFIED));
+    }
+}
@@ -0,0 +1,145 @@
+package de.treestack.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledRulesTest {
+
+    private static final CompiledRules.Source A =
+            new CompiledRules.Source("a.com", "Exact", null, "a-next.com", "Exact", "10");
+    private static final CompiledRules.Source B =
+            new CompiledRules.Source("*.b.org", "Wildcard", null, "b-next\\.org", "Regex", "20");
+
+    @Test
+    void when_firstAccess_expect_compiledSynchronously() {
+        CompiledRules rules = new CompiledRules(task -> fail("first compile must not be deferred"));
+
+        CompiledRules.Snapshot snapshot = rules.current(A);
+
+        assertEquals(1, snapshot.version());
+        assertTrue(snapshot.matcher().matches("a.com"));
+        assertTrue(snapshot.candidate().matches("a-next.com"));
+        assertEquals(10d, snapshot.shadowSamplePercent());
+    }
+
+    @Test
+    void when_configChanges_expect_oldSnapshotServedUntilRebuildPublished() {
+        Queue<Runnable> pending = new ArrayDeque<>();
+        CompiledRules rules = new CompiledRules(pending::add);
+        CompiledRules.Snapshot first = rules.current(A);
+
+        CompiledRules.Snapshot duringRebuild = rules.current(B);
+        rules.current(B);
+
+        assertSame(first, duringRebuild);
+        assertEquals(1, pending.size());
+
+        pending.poll().run();
+        CompiledRules.Snapshot rebuilt = rules.current(B);
+
+        assertEquals(2, rebuilt.version());
+        assertEquals(B, rebuilt.source());
+        assertTrue(rebuilt.matcher().matches("eu.b.org"));
+        assertEquals(new CompiledRules.Stats(2, "label-trie", 4, 2, 1), rules.stats());
+    }
+
+    @Test
+    void when_severalChangesBeforeRebuild_expect_onlyLatestCompiled() {
+        Queue<Runnable> pending = new ArrayDeque<>();
+        CompiledRules rules = new CompiledRules(pending::add);
+        rules.current(A);
+
+        rules.current(B);
+        rules.current(new CompiledRules.Source("c.com", "Exact", null, null, null, null));
+        pending.poll().run();
+
+        CompiledRules.Snapshot published = rules.published();
+        assertEquals(2, published.version());
+        assertTrue(published.matcher().matches("c.com"));
+        assertNull(published.candidate());
+        assertTrue(pending.isEmpty());
+    }
+
+    @Test
+    void when_concurrentReadersDuringConfigChanges_expect_neverPartialSnapshot() throws Exception {
+        ExecutorService rebuilds = Executors.newSingleThreadExecutor();
+        CompiledRules rules = new CompiledRules(rebuilds);
+        rules.current(A);
+
+        int readers = 8;
+        int iterations = 20_000;
+        Queue<String> violations = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(readers);
+        ExecutorService threads = Executors.newFixedThreadPool(readers);
+        try {
+            for (int r = 0; r < readers; r++) {
+                threads.execute(() -> {
+                    try {
+                        start.await();
+                        long lastVersion = 0;
+                        for (int i = 0; i < iterations; i++) {
+                            // Every 1000 logins the admin "edits" the mapper
+                            CompiledRules.Snapshot snapshot = rules.current((i / 1000) % 2 == 0 ? A : B);
+                            if (snapshot.version() < lastVersion) {
+                                violations.add("version went back from " + lastVersion + " to " + snapshot.version());
+                            }
+                            lastVersion = snapshot.version();
+                            String problem = checkConsistent(snapshot);
+                            if (problem != null) {
+                                violations.add(problem);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            start.countDown();
+            assertTrue(done.await(60, TimeUnit.SECONDS));
+
+            // Readers settle on B; the background rebuild must eventually publish it
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (rules.current(B).source() != B && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        } finally {
+            threads.shutdownNow();
+            rebuilds.shutdownNow();
+        }
+
+        assertEquals(B, rules.published().source());
+        assertTrue(rules.published().version() > 1);
+        assertTrue(violations.isEmpty(), () -> violations.size() + " violations, e.g. " + violations.peek());
+    }
+
+    private static String checkConsistent(CompiledRules.Snapshot snapshot) {
+        boolean consistent;
+        if (snapshot.source() == A) {
+            consistent = snapshot.matcher().domains().equals(Set.of("a.com"))
+                    && snapshot.matcher().mode() == DomainMatchMode.EXACT
+                    && snapshot.candidate().domains().equals(Set.of("a-next.com"))
+                    && snapshot.shadowSamplePercent() == 10d;
+        } else if (snapshot.source() == B) {
+            consistent = snapshot.matcher().domains().equals(Set.of("*.b.org"))
+                    && snapshot.matcher().mode() == DomainMatchMode.WILDCARD
+                    && snapshot.candidate().mode() == DomainMatchMode.REGEX
+                    && snapshot.shadowSamplePercent() == 20d;
+        } else {
+            return "unknown source " + snapshot.source();
+        }
+        return consistent ? null : "partial snapshot " + snapshot;
+    }
+}
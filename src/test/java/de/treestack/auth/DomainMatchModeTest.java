@@ -28,6 +28,9 @@ class DomainMatchModeTest {
 
         actual = DomainMatchMode.from("regex");
         assertEquals(DomainMatchMode.REGEX, actual);
+
+        actual = DomainMatchMode.from("organization");
+        assertEquals(DomainMatchMode.ORGANIZATION, actual);
     }
 
     @Test
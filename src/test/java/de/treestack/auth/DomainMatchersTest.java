@@ -0,0 +1,139 @@
+package de.treestack.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DomainMatchersTest {
+
+    @Test
+    void when_fewExactDomains_expect_linearScan() {
+        DomainMatcher matcher = DomainMatchers.plan(Set.of("a.com", "b.com"), DomainMatchMode.EXACT);
+
+        assertEquals("linear-scan", matcher.engine());
+        assertTrue(matcher.matches("a.com"));
+        assertFalse(matcher.matches("c.com"));
+    }
+
+    @Test
+    void when_manyExactDomains_expect_hashSet() {
+        Set<String> domains = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            domains.add("partner" + i + ".com");
+        }
+
+        DomainMatcher matcher = DomainMatchers.plan(domains, DomainMatchMode.EXACT);
+
+        assertEquals("hash-set", matcher.engine());
+        assertTrue(matcher.matches("partner999.com"));
+        assertFalse(matcher.matches("partner1000.com"));
+    }
+
+    @Test
+    void when_wildcard_expect_labelTrie() {
+        DomainMatcher matcher = DomainMatchers.plan(
+                Set.of("*.treestack.de", "eu.*.partner.org", "example.org"), DomainMatchMode.WILDCARD);
+
+        assertEquals("label-trie", matcher.engine());
+        assertTrue(matcher.matches("dev.treestack.de"));
+        assertTrue(matcher.matches("eu.shop.partner.org"));
+        assertTrue(matcher.matches("example.org"));
+
+        assertFalse(matcher.matches("treestack.de"));
+        assertFalse(matcher.matches(".treestack.de"));
+        assertFalse(matcher.matches("dev.treestack.de."));
+        assertFalse(matcher.matches("us.shop.partner.org"));
+        assertFalse(matcher.matches("www.example.org"));
+    }
+
+    @Test
+    void when_wildcardOverlapsLiteral_expect_backtracking() {
+        DomainMatcher matcher = DomainMatchers.plan(Set.of("a.*.example.org", "*.b.example.org"), DomainMatchMode.WILDCARD);
+
+        assertTrue(matcher.matches("a.b.example.org"));
+        assertTrue(matcher.matches("a.c.example.org"));
+        assertTrue(matcher.matches("x.b.example.org"));
+        assertFalse(matcher.matches("x.c.example.org"));
+    }
+
+    @Test
+    void when_regexEndsInFixedLabel_expect_suffixPrefilter() {
+        DomainMatcher matcher = DomainMatchers.plan(Set.of("partner-.*\\.org"), DomainMatchMode.REGEX);
+
+        assertEquals("regex+suffix-prefilter", matcher.engine());
+        assertTrue(matcher.matches("partner-eu.org"));
+        assertFalse(matcher.matches("partner-eu.com"));
+    }
+
+    @Test
+    void when_regexWrittenInUnicode_expect_matchedAgainstUnicodeForm() {
+        DomainMatcher matcher = DomainMatchers.plan(Set.of("bücher\\.example", "xn--caf-dma\\.example"), DomainMatchMode.REGEX);
+
+        assertTrue(matcher.matches(DomainNames.normalize("bücher.example")));
+        assertTrue(matcher.matches("xn--bcher-kva.example"));
+        assertTrue(matcher.matches(DomainNames.normalize("café.example")));
+        assertFalse(matcher.matches("buecher.example"));
+    }
+
+    @Test
+    void when_deriveLiteralSuffix_expect_onlySafeSuffixes() {
+        assertEquals(".org", DomainMatchers.literalSuffix("partner-.*\\.org"));
+        assertEquals(".org", DomainMatchers.literalSuffix("^corp\\.org$"));
+        assertEquals(".internal", DomainMatchers.literalSuffix("corp[0-9]+\\.internal"));
+
+        assertNull(DomainMatchers.literalSuffix("partner-.*.org"));
+        assertNull(DomainMatchers.literalSuffix("a\\.com|b\\.org"));
+        assertNull(DomainMatchers.literalSuffix("(?i).*\\.org"));
+        assertNull(DomainMatchers.literalSuffix(".*\\.org+"));
+        assertNull(DomainMatchers.literalSuffix(".*\\\\.org"));
+        assertNull(DomainMatchers.literalSuffix(".*\\.(org|com)"));
+    }
+
+    @Test
+    void when_tenantScopedEntries_expect_matchOnlyForThatTenant() {
+        DomainMatcher matcher = DomainMatchers.plan(
+                Set.of("tenant-a/example.com", "*.partner.org"), DomainMatchMode.WILDCARD, true);
+
+        assertEquals("tenant-scoped", matcher.engine());
+        assertTrue(matcher.matches("Tenant-A", "example.com"));
+        assertFalse(matcher.matches("tenant-b", "example.com"));
+        assertFalse(matcher.matches(null, "example.com"));
+        assertTrue(matcher.matches("tenant-b", "eu.partner.org"));
+        assertTrue(matcher.matches(null, "eu.partner.org"));
+        assertFalse(matcher.matches("example.com"));
+    }
+
+    @Test
+    void when_tenantEntriesWithoutTenantClaim_expect_notSplit() {
+        DomainMatcher matcher = DomainMatchers.plan(
+                Set.of("tenant-a/example.com", "*.partner.org"), DomainMatchMode.WILDCARD, false);
+
+        assertEquals("label-trie", matcher.engine());
+        assertFalse(matcher.matches("tenant-a", "example.com"));
+        assertTrue(matcher.matches(null, "eu.partner.org"));
+    }
+
+    @Test
+    void when_regexContainsSlash_expect_notTakenForTenant() {
+        Set<String> expressions = Set.of("[^/]+\\.example\\.com", "tenant-a/.*\\.partner\\.org");
+
+        DomainMatcher unscoped = DomainMatchers.plan(expressions, DomainMatchMode.REGEX, false);
+        DomainMatcher scoped = DomainMatchers.plan(expressions, DomainMatchMode.REGEX, true);
+
+        assertTrue(unscoped.matches("eu.example.com"));
+        assertTrue(scoped.matches("tenant-b", "eu.example.com"));
+        assertTrue(scoped.matches("tenant-a", "eu.partner.org"));
+        assertFalse(scoped.matches("tenant-b", "eu.partner.org"));
+    }
+
+    @Test
+    void when_noTenantScopedEntries_expect_tenantIgnored() {
+        DomainMatcher matcher = DomainMatchers.plan(Set.of("example.com"), DomainMatchMode.EXACT);
+
+        assertEquals("linear-scan", matcher.engine());
+        assertTrue(matcher.matches("any-tenant", "example.com"));
+    }
+}
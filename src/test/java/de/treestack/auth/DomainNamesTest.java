@@ -0,0 +1,66 @@
+package de.treestack.auth;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DomainNamesTest {
+
+    @BeforeEach
+    void setUp() {
+        DomainNames.clearCache();
+    }
+
+    @Test
+    void when_asciiDomain_expect_lowerCaseWithoutCaching() {
+        assertEquals("example.com", DomainNames.normalize("Example.COM"));
+        assertEquals(0, DomainNames.cacheSize());
+    }
+
+    @Test
+    void when_trailingDots_expect_stripped() {
+        assertEquals("example.com", DomainNames.normalize("example.com."));
+        assertEquals("example.com", DomainNames.canonical("example.com.."));
+    }
+
+    @Test
+    void when_internationalizedDomain_expect_punycodeAndCached() {
+        assertEquals("xn--bcher-kva.example", DomainNames.normalize("bücher.example"));
+        assertEquals("xn--bcher-kva.example", DomainNames.normalize("Bücher.example."));
+        assertEquals("xn--bcher-kva.example", DomainNames.canonical("BÜCHER.example"));
+        assertEquals(2, DomainNames.cacheSize());
+    }
+
+    @Test
+    void when_manyDistinctDomains_expect_boundedCache() {
+        for (int i = 0; i < DomainNames.CACHE_SIZE * 3; i++) {
+            DomainNames.normalize("bücher" + i + ".example");
+        }
+        assertTrue(DomainNames.cacheSize() <= DomainNames.CACHE_SIZE);
+    }
+
+    @Test
+    void when_cacheFull_expect_recentlyUsedDomainsKept() {
+        for (int i = 0; i < DomainNames.CACHE_SIZE * 2; i++) {
+            DomainNames.normalize("häufig.example");
+            DomainNames.normalize("selten" + i + ".bücher.example");
+        }
+
+        assertTrue(DomainNames.isCached("häufig.example"));
+        assertFalse(DomainNames.isCached("selten0.bücher.example"));
+    }
+
+    @Test
+    void when_unicodeAndPunycodeConfigured_expect_bothFormsMatch() {
+        DomainMatcher unicode = DomainMatchers.plan(Set.of("bücher.example"), DomainMatchMode.EXACT);
+        DomainMatcher punycode = DomainMatchers.plan(Set.of("xn--bcher-kva.example"), DomainMatchMode.EXACT);
+        DomainMatcher wildcard = DomainMatchers.plan(Set.of("*.bücher.example"), DomainMatchMode.WILDCARD);
+
+        assertTrue(unicode.matches(DomainRoleIdpMapper.extractDomain("user@xn--bcher-kva.example")));
+        assertTrue(punycode.matches(DomainRoleIdpMapper.extractDomain("user@bücher.example")));
+        assertTrue(wildcard.matches(DomainRoleIdpMapper.extractDomain("user@shop.BÜCHER.example.")));
+    }
+}
@@ -0,0 +1,204 @@
+package de.treestack.auth;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.models.IdentityProviderMapperModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.services.resources.admin.permissions.AdminPermissionEvaluator;
+import org.keycloak.services.resources.admin.permissions.RealmPermissionEvaluator;
+import org.keycloak.services.resources.admin.permissions.UserPermissionEvaluator;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DomainRoleAdminResourceTest {
+
+    @Mock
+    KeycloakSession session;
+    @Mock
+    RealmModel realm;
+    @Mock
+    AdminPermissionEvaluator auth;
+    @Mock
+    RealmPermissionEvaluator realmAuth;
+    @Mock
+    UserPermissionEvaluator usersAuth;
+    @Mock
+    RoleModel role;
+    @Mock
+    KeycloakSessionFactory sessionFactory;
+
+    DomainRoleAdminResource resource;
+
+    @BeforeEach
+    void setUp() {
+        DomainStatistics.clear();
+        CompiledRules.clear();
+        RoleMigration.clear();
+        when(auth.realm()).thenReturn(realmAuth);
+        resource = new DomainRoleAdminResource(session, realm, auth);
+    }
+
+    @Test
+    void when_mapperExists_expect_statistics() {
+        // Arrange
+        when(realm.getIdentityProviderMapperById("m1")).thenReturn(mapper(DomainRoleIdpMapper.PROVIDER_ID));
+        DomainStatistics.forMapper("m1").record("example.com", true);
+        DomainStatistics.forMapper("m1").record("example.com", true);
+        DomainStatistics.forMapper("m1").record("other.net", false);
+
+        // Act
+        var actual = resource.getStatistics("m1");
+
+        // Assert
+        verify(realmAuth).requireViewIdentityProviders();
+        assertEquals("m1", actual.mapperId());
+        assertEquals(3, actual.logins().evaluations());
+        assertEquals("example.com", actual.logins().topDomains().get(0).domain());
+        assertEquals(1, actual.logins().topFallbackDomains().size());
+        assertEquals("other.net", actual.logins().topFallbackDomains().get(0).domain());
+        assertEquals(0, actual.compiledRules().version());
+    }
+
+    @Test
+    void when_mapperHasNoLoginsYet_expect_emptyStatistics() {
+        when(realm.getIdentityProviderMapperById("m1")).thenReturn(mapper(DomainRoleIdpMapper.PROVIDER_ID));
+
+        var actual = resource.getStatistics("m1");
+
+        assertEquals(0, actual.logins().evaluations());
+        assertTrue(actual.logins().topDomains().isEmpty());
+        assertTrue(actual.logins().topFallbackDomains().isEmpty());
+        assertEquals(0, actual.compiledRules().reads());
+    }
+
+    @Test
+    void when_mapperOfOtherType_expect_notFound() {
+        when(realm.getIdentityProviderMapperById("m1")).thenReturn(mapper("hardcoded-role-idp-mapper"));
+
+        assertStatus(Response.Status.NOT_FOUND, () -> resource.getStatistics("m1"));
+    }
+
+    @Test
+    void when_mapperMissing_expect_notFound() {
+        assertStatus(Response.Status.NOT_FOUND, () -> resource.getStatistics("unknown"));
+    }
+
+    @Test
+    void when_migrationWithoutFromRole_expect_badRequest() {
+        when(auth.users()).thenReturn(usersAuth);
+        when(realm.getIdentityProviderMapperById("m1")).thenReturn(mapper(DomainRoleIdpMapper.PROVIDER_ID));
+
+        assertStatus(Response.Status.BAD_REQUEST, () -> resource.startMigration("m1",
+                new DomainRoleAdminResource.MigrationRequest("matched", null, null, null)));
+        verify(realmAuth).requireManageIdentityProviders();
+        verify(usersAuth).requireManage();
+    }
+
+    @Test
+    void when_migrationToSameRole_expect_badRequest() {
+        when(auth.users()).thenReturn(usersAuth);
+        IdentityProviderMapperModel model = mapper(DomainRoleIdpMapper.PROVIDER_ID);
+        model.setConfig(Map.of("matchedRole", "role-a"));
+        when(realm.getIdentityProviderMapperById("m1")).thenReturn(model);
+
+        assertStatus(Response.Status.BAD_REQUEST, () -> resource.startMigration("m1",
+                new DomainRoleAdminResource.MigrationRequest(null, "role-a", null, null)));
+    }
+
+    @Test
+    void when_migrationFromOtherBranchRole_expect_badRequest() {
+        when(auth.users()).thenReturn(usersAuth);
+        IdentityProviderMapperModel model = mapper(DomainRoleIdpMapper.PROVIDER_ID);
+        model.setConfig(Map.of("matchedRole", "role-matched", "fallbackRole", "role-fallback"));
+        when(realm.getIdentityProviderMapperById("m1")).thenReturn(model);
+
+        assertStatus(Response.Status.BAD_REQUEST, () -> resource.startMigration("m1",
+                new DomainRoleAdminResource.MigrationRequest("matched", "role-fallback", null, null)));
+        assertNull(RoleMigration.find("m1"));
+    }
+
+    @Test
+    void when_migrationForUnknownBranch_expect_badRequest() {
+        when(auth.users()).thenReturn(usersAuth);
+        when(realm.getIdentityProviderMapperById("m1")).thenReturn(mapper(DomainRoleIdpMapper.PROVIDER_ID));
+
+        assertStatus(Response.Status.BAD_REQUEST, () -> resource.startMigration("m1",
+                new DomainRoleAdminResource.MigrationRequest("other", "role-a", null, null)));
+    }
+
+    @Test
+    void when_migrationWithInvalidBatchSize_expect_badRequest() {
+        when(auth.users()).thenReturn(usersAuth);
+        IdentityProviderMapperModel model = mapper(DomainRoleIdpMapper.PROVIDER_ID);
+        model.setConfig(Map.of("fallbackRole", "role-b"));
+        when(realm.getIdentityProviderMapperById("m1")).thenReturn(model);
+        when(realm.getRole("role-a")).thenReturn(role);
+        when(realm.getRole("role-b")).thenReturn(role);
+
+        assertStatus(Response.Status.BAD_REQUEST, () -> resource.startMigration("m1",
+                new DomainRoleAdminResource.MigrationRequest("fallback", "role-a", 0, null)));
+    }
+
+    @Test
+    void when_migrationValid_expect_submittedAndAccepted() {
+        // Arrange
+        when(auth.users()).thenReturn(usersAuth);
+        IdentityProviderMapperModel model = mapper(DomainRoleIdpMapper.PROVIDER_ID);
+        model.setIdentityProviderAlias("idp");
+        model.setConfig(Map.of("matchedRole", "role-b"));
+        when(realm.getIdentityProviderMapperById("m1")).thenReturn(model);
+        when(realm.getId()).thenReturn("realm-id");
+        when(realm.getRole("role-a")).thenReturn(role);
+        when(realm.getRole("role-b")).thenReturn(role);
+        when(session.getKeycloakSessionFactory()).thenReturn(sessionFactory);
+        List<Runnable> submitted = new ArrayList<>();
+        resource = new DomainRoleAdminResource(session, realm, auth, submitted::add);
+
+        // Act
+        Response response = resource.startMigration("m1",
+                new DomainRoleAdminResource.MigrationRequest(null, "role-a", 100, 0L));
+
+        // Assert
+        assertEquals(Response.Status.ACCEPTED.getStatusCode(), response.getStatus());
+        RoleMigration.Progress progress = (RoleMigration.Progress) response.getEntity();
+        assertEquals("m1", progress.mapperId());
+        assertEquals("role-a", progress.fromRole());
+        assertEquals("role-b", progress.toRole());
+        assertSame(RoleMigration.find("m1"), submitted.get(0));
+        assertEquals(1, submitted.size());
+        verifyNoInteractions(sessionFactory);
+    }
+
+    @Test
+    void when_noMigrationStarted_expect_notFound() {
+        when(realm.getIdentityProviderMapperById("m1")).thenReturn(mapper(DomainRoleIdpMapper.PROVIDER_ID));
+
+        assertStatus(Response.Status.NOT_FOUND, () -> resource.getMigration("m1"));
+    }
+
+    private static void assertStatus(Response.Status expected, Runnable call) {
+        WebApplicationException e = assertThrows(WebApplicationException.class, call::run);
+        assertEquals(expected.getStatusCode(), e.getResponse().getStatus());
+    }
+
+    private static IdentityProviderMapperModel mapper(String type) {
+        IdentityProviderMapperModel model = new IdentityProviderMapperModel();
+        model.setIdentityProviderMapper(type);
+        model.setConfig(Map.of());
+        return model;
+    }
+}
@@ -1,13 +1,18 @@
 package de.treestack.auth;
 
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.broker.oidc.OIDCIdentityProvider;
+import org.keycloak.broker.provider.BrokeredIdentityContext;
 import org.keycloak.models.IdentityProviderMapperModel;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.ClientModel;
+import org.keycloak.representations.JsonWebToken;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -15,6 +20,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -254,4 +260,142 @@ class DomainRoleIdpMapperAssignRoleTest {
         // Assert
         verify(user, never()).grantRole(any());
     }
+
+    @Test
+    void when_candidateConfigured_expect_shadowEvaluatedButNotApplied() {
+        // Arrange
+        ShadowEvaluation.clear();
+        CompiledRules.clear();
+        cfg.put("allowedDomains", "example.com");
+        cfg.put("matchedRole", "role-matched");
+        cfg.put("fallbackRole", "role-fallback");
+        cfg.put("candidateDomains", "other.net");
+        cfg.put("shadowSamplePercent", "100");
+        when(mapperModel.getConfig()).thenReturn(cfg);
+        when(mapperModel.getId()).thenReturn("shadow-mapper");
+        when(user.getEmail()).thenReturn("user@other.net");
+        when(realm.getRole("role-matched")).thenReturn(matchedRole);
+        when(realm.getRole("role-fallback")).thenReturn(fallbackRole);
+
+        // Act
+        DomainRoleIdpMapper.assignRole(realm, user, mapperModel);
+
+        // Assert
+        verify(user).grantRole(fallbackRole);
+        verify(user, never()).grantRole(matchedRole);
+        assertEquals(1, ShadowEvaluation.find("shadow-mapper").snapshot().matchedOnlyCandidate());
+    }
+
+    @Test
+    void when_parseSamplePercent_expect_clampedWithDefault() {
+        assertEquals(10d, DomainRoleIdpMapper.parseSamplePercent(null));
+        assertEquals(10d, DomainRoleIdpMapper.parseSamplePercent("ten"));
+        assertEquals(2.5d, DomainRoleIdpMapper.parseSamplePercent(" 2.5 "));
+        assertEquals(100d, DomainRoleIdpMapper.parseSamplePercent("250"));
+        assertEquals(0d, DomainRoleIdpMapper.parseSamplePercent("-1"));
+    }
+
+    @Test
+    void when_domainSourceIsClaim_expect_matchOnClaimWithoutReadingUserEmail() {
+        // Arrange
+        cfg.put("allowedDomains", "example.com");
+        cfg.put("matchedRole", "role-matched");
+        cfg.put("domainSource", "Claim");
+        cfg.put("domainClaim", "hd");
+        when(mapperModel.getConfig()).thenReturn(cfg);
+        when(realm.getRole("role-matched")).thenReturn(matchedRole);
+        BrokeredIdentityContext context = contextWithToken(Map.of("hd", "Example.com"), null);
+
+        // Act
+        DomainRoleIdpMapper.assignRole(realm, user, mapperModel, context);
+
+        // Assert
+        verify(user).grantRole(matchedRole);
+        verify(user, never()).getEmail();
+    }
+
+    @Test
+    void when_verifiedEmailRequiredButNotVerified_expect_doesNothing() {
+        // Arrange
+        cfg.put("allowedDomains", "example.com");
+        cfg.put("matchedRole", "role-matched");
+        cfg.put("domainSource", "Claim");
+        cfg.put("requireVerifiedEmail", "true");
+        when(mapperModel.getConfig()).thenReturn(cfg);
+        BrokeredIdentityContext context = contextWithToken(Map.of(), false);
+
+        // Act
+        DomainRoleIdpMapper.assignRole(realm, user, mapperModel, context);
+
+        // Assert
+        verify(user, never()).grantRole(any());
+        verifyNoInteractions(realm);
+    }
+
+    @Test
+    void when_tenantScopedDomainFromOtherTenant_expect_assignFallbackRole() {
+        // Arrange
+        cfg.put("allowedDomains", "tenant-a/example.com");
+        cfg.put("matchedRole", "role-matched");
+        cfg.put("fallbackRole", "role-fallback");
+        cfg.put("domainSource", "Claim");
+        cfg.put("tenantClaim", "tid");
+        when(mapperModel.getConfig()).thenReturn(cfg);
+        when(realm.getRole("role-matched")).thenReturn(matchedRole);
+        when(realm.getRole("role-fallback")).thenReturn(fallbackRole);
+        BrokeredIdentityContext context = contextWithToken(Map.of("tid", "tenant-b"), true);
+
+        // Act
+        DomainRoleIdpMapper.assignRole(realm, user, mapperModel, context);
+
+        // Assert
+        verify(user).grantRole(fallbackRole);
+        verify(user, never()).grantRole(matchedRole);
+    }
+
+    @Test
+    void when_tenantScopedLiveAndCandidate_expect_shadowComparesTenantDecisions() {
+        // Arrange
+        ShadowEvaluation.clear();
+        CompiledRules.clear();
+        cfg.put("allowedDomains", "tenant-a/example.com");
+        cfg.put("matchedRole", "role-matched");
+        cfg.put("domainSource", "Claim");
+        cfg.put("tenantClaim", "tid");
+        cfg.put("candidateDomains", "tenant-a/example.com tenant-b/example.com");
+        cfg.put("shadowSamplePercent", "100");
+        when(mapperModel.getConfig()).thenReturn(cfg);
+        when(mapperModel.getId()).thenReturn("tenant-shadow-mapper");
+        when(realm.getRole("role-matched")).thenReturn(matchedRole);
+
+        // Act
+        DomainRoleIdpMapper.assignRole(realm, user, mapperModel, contextWithToken(Map.of("tid", "tenant-a"), true));
+        DomainRoleIdpMapper.assignRole(realm, user, mapperModel, contextWithToken(Map.of("tid", "tenant-b"), true));
+
+        // Assert
+        verify(user).grantRole(matchedRole);
+        ShadowEvaluation.Snapshot snapshot = ShadowEvaluation.find("tenant-shadow-mapper").snapshot();
+        assertEquals(2, snapshot.samples());
+        assertEquals(1, snapshot.agreements());
+        assertEquals(0, snapshot.matchedOnlyLive());
+        assertEquals(1, snapshot.matchedOnlyCandidate());
+    }
+
+    /**
+     * Build the context the way Keycloak's OIDC broker does: the validated ID token as a plain
+     * {@link JsonWebToken} with all claims in the other claims, plus the user info response.
+     */
+    private static BrokeredIdentityContext contextWithToken(Map<String, Object> claims, Boolean emailVerified) {
+        JsonWebToken token = new JsonWebToken();
+        token.setOtherClaims("email", "user@example.com");
+        if (emailVerified != null) {
+            token.setOtherClaims("email_verified", emailVerified);
+        }
+        BrokeredIdentityContext context = new BrokeredIdentityContext("broker-id");
+        context.getContextData().put(OIDCIdentityProvider.VALIDATED_ID_TOKEN, token);
+        ObjectNode userInfo = JsonNodeFactory.instance.objectNode();
+        claims.forEach((name, value) -> userInfo.put(name, value.toString()));
+        context.getContextData().put(OIDCIdentityProvider.USER_INFO, userInfo);
+        return context;
+    }
 }
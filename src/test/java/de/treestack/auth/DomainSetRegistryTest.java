@@ -0,0 +1,86 @@
+package de.treestack.auth;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DomainSetRegistryTest {
+
+    @BeforeEach
+    void setUp() {
+        DomainSetRegistry.clear();
+    }
+
+    @Test
+    void when_sameDomainsInDifferentOrder_expect_sameInstance() {
+        DomainMatcher first = DomainSetRegistry.compile(
+                DomainRoleIdpMapper.parseAllowedDomains("a.com b.com c.com"), DomainMatchMode.EXACT, false);
+        DomainMatcher second = DomainSetRegistry.compile(
+                DomainRoleIdpMapper.parseAllowedDomains("c.com,a.com B.com"), DomainMatchMode.EXACT, false);
+
+        assertSame(first, second);
+        assertEquals(1, DomainSetRegistry.size());
+    }
+
+    @Test
+    void when_differentDomains_expect_separateInstances() {
+        DomainMatcher first = DomainSetRegistry.compile(Set.of("a.com"), DomainMatchMode.EXACT, false);
+        DomainMatcher second = DomainSetRegistry.compile(Set.of("b.com"), DomainMatchMode.EXACT, false);
+
+        assertNotSame(first, second);
+        assertEquals(2, DomainSetRegistry.size());
+    }
+
+    @Test
+    void when_sameDomainsWithDifferentMode_expect_separateInstances() {
+        DomainMatcher exact = DomainSetRegistry.compile(Set.of("a.com"), DomainMatchMode.EXACT, false);
+        DomainMatcher regex = DomainSetRegistry.compile(Set.of("a.com"), DomainMatchMode.REGEX, false);
+
+        assertNotSame(exact, regex);
+        assertEquals(DomainMatchMode.EXACT, exact.mode());
+        assertEquals(DomainMatchMode.REGEX, regex.mode());
+    }
+
+    @Test
+    void when_sameDomainsWithAndWithoutTenantScope_expect_separateInstances() {
+        DomainMatcher unscoped = DomainSetRegistry.compile(Set.of("tenant-a/a.com"), DomainMatchMode.EXACT, false);
+        DomainMatcher scoped = DomainSetRegistry.compile(Set.of("tenant-a/a.com"), DomainMatchMode.EXACT, true);
+
+        assertNotSame(unscoped, scoped);
+        assertEquals("tenant-scoped", scoped.engine());
+    }
+
+    @Test
+    void when_compiled_expect_immutableDomains() {
+        DomainMatcher shared = DomainSetRegistry.compile(Set.of("a.com"), DomainMatchMode.EXACT, false);
+
+        assertThrows(UnsupportedOperationException.class, () -> shared.domains().add("b.com"));
+    }
+
+    @Test
+    void when_sameContent_expect_sameKey() {
+        assertEquals(
+                DomainSetRegistry.canonicalKey(Set.of("a.com", "b.com"), DomainMatchMode.EXACT, false),
+                DomainSetRegistry.canonicalKey(Set.of("b.com", "a.com"), DomainMatchMode.EXACT, false));
+        assertNotEquals(
+                DomainSetRegistry.canonicalKey(Set.of("a.com", "b.com"), DomainMatchMode.EXACT, false),
+                DomainSetRegistry.canonicalKey(Set.of("a.comb.com"), DomainMatchMode.EXACT, false));
+    }
+
+    @Test
+    void when_noMapperUsesMatcherAnyMore_expect_entryReleased() throws InterruptedException {
+        DomainMatcher matcher = DomainSetRegistry.compile(Set.of("released.example"), DomainMatchMode.EXACT, false);
+        assertEquals(1, DomainSetRegistry.size());
+
+        matcher = null;
+        for (int i = 0; i < 50 && DomainSetRegistry.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, DomainSetRegistry.size());
+    }
+}
@@ -0,0 +1,156 @@
+package de.treestack.auth;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DomainStatisticsTest {
+
+    @BeforeEach
+    void setUp() {
+        DomainStatistics.clear();
+    }
+
+    @Test
+    void when_mapperHasNoId_expect_noStatistics() {
+        assertNull(DomainStatistics.forMapper(null));
+    }
+
+    @Test
+    void when_sameMapperId_expect_sameStatistics() {
+        assertSame(DomainStatistics.forMapper("m1"), DomainStatistics.forMapper("m1"));
+        assertSame(DomainStatistics.forMapper("m1"), DomainStatistics.find("m1"));
+        assertNull(DomainStatistics.find("m2"));
+    }
+
+    @Test
+    void when_recording_expect_countersAndRatio() {
+        DomainStatistics statistics = new DomainStatistics();
+
+        statistics.record("example.com", true);
+        statistics.record("example.com", true);
+        statistics.record("example.com", true);
+        statistics.record("other.net", false);
+
+        DomainStatistics.Snapshot snapshot = statistics.snapshot();
+        assertEquals(4, snapshot.evaluations());
+        assertEquals(3, snapshot.matched());
+        assertEquals(1, snapshot.fallback());
+        assertEquals(0.75d, snapshot.matchRatio());
+        assertEquals(new DomainStatistics.DomainCount("example.com", 3), snapshot.topDomains().get(0));
+        assertEquals(new DomainStatistics.DomainCount("other.net", 1), snapshot.topDomains().get(1));
+    }
+
+    @Test
+    void when_fallbackLogins_expect_trackedSeparately() {
+        DomainStatistics statistics = new DomainStatistics();
+
+        statistics.record("example.com", true);
+        statistics.record("example.com", true);
+        statistics.record("gmail.com", false);
+        statistics.record("gmail.com", false);
+        statistics.record("other.net", false);
+
+        DomainStatistics.Snapshot snapshot = statistics.snapshot();
+        assertEquals(List.of(
+                new DomainStatistics.DomainCount("gmail.com", 2),
+                new DomainStatistics.DomainCount("other.net", 1)), snapshot.topFallbackDomains());
+        assertEquals(0, statistics.estimateFallback("example.com"));
+        assertEquals(3, snapshot.topDomains().size());
+    }
+
+    @Test
+    void when_manyDistinctDomains_expect_boundedTopDomainsWithHeavyHitters() {
+        DomainStatistics statistics = new DomainStatistics();
+        for (int i = 0; i < 500; i++) {
+            statistics.record("heavy.example", true);
+        }
+        for (int i = 0; i < 100_000; i++) {
+            statistics.record("user" + i + ".example", false);
+        }
+
+        DomainStatistics.Snapshot snapshot = statistics.snapshot();
+        assertTrue(snapshot.topDomains().size() <= DomainStatistics.TOP_K);
+        assertEquals("heavy.example", snapshot.topDomains().get(0).domain());
+        assertTrue(statistics.estimate("heavy.example") >= 500);
+    }
+
+    @Test
+    void when_recordingConcurrently_expect_noLostEvaluations() throws Exception {
+        DomainStatistics statistics = new DomainStatistics();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        statistics.record("d" + (i % 50) + ".example", thread % 2 == 0);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        DomainStatistics.Snapshot snapshot = statistics.snapshot();
+        assertEquals(80_000, snapshot.evaluations());
+        assertEquals(40_000, snapshot.matched());
+        assertTrue(snapshot.topDomains().size() <= DomainStatistics.TOP_K);
+        assertTrue(statistics.estimate("d0.example") >= 1_600);
+    }
+
+    @Test
+    void when_newDomainsArriveConcurrently_expect_topDomainsNeverOverfilled() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 50; round++) {
+                DomainStatistics statistics = new DomainStatistics();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    int thread = t;
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < 10; i++) {
+                            statistics.record("t" + thread + "-" + i + ".example", true);
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+
+                assertTrue(statistics.snapshot().topDomains().size() <= DomainStatistics.TOP_K);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void when_domainsShareStringHashCode_expect_countedSeparately() {
+        DomainStatistics statistics = new DomainStatistics();
+        assertEquals("Aa.example".hashCode(), "BB.example".hashCode());
+
+        for (int i = 0; i < 10; i++) {
+            statistics.record("Aa.example", true);
+        }
+
+        assertEquals(10, statistics.estimate("Aa.example"));
+        assertEquals(0, statistics.estimate("BB.example"));
+    }
+}
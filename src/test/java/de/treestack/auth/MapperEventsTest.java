@@ -0,0 +1,84 @@
+package de.treestack.auth;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.models.IdentityProviderMapperModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MapperEventsTest {
+
+    @Mock
+    RealmModel realm;
+    @Mock
+    UserModel user;
+    @Mock
+    IdentityProviderMapperModel mapperModel;
+    @Mock
+    RoleModel matchedRole;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void when_recording_expect_eventPerPhase() throws Exception {
+        // Arrange
+        when(mapperModel.getConfig()).thenReturn(Map.of("allowedDomains", "example.com", "matchedRole", "role-matched"));
+        when(mapperModel.getId()).thenReturn("mapper-1");
+        when(realm.getName()).thenReturn("test-realm");
+        when(realm.getRole("role-matched")).thenReturn(matchedRole);
+        when(matchedRole.getName()).thenReturn("role-matched");
+        when(user.getEmail()).thenReturn("user@example.com");
+
+        Path dump = tempDir.resolve("mapper.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("de.treestack.auth.ConfigLoad");
+            recording.enable("de.treestack.auth.DomainMatch");
+            recording.enable("de.treestack.auth.RoleResolution");
+            recording.enable("de.treestack.auth.RoleGrant");
+            recording.start();
+
+            // Act
+            DomainRoleIdpMapper.assignRole(realm, user, mapperModel);
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        // Assert
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        assertEquals(1, count(events, "de.treestack.auth.ConfigLoad"));
+        assertEquals(2, count(events, "de.treestack.auth.RoleResolution"));
+        assertEquals(1, count(events, "de.treestack.auth.RoleGrant"));
+
+        RecordedEvent match = events.stream()
+                .filter(e -> e.getEventType().getName().equals("de.treestack.auth.DomainMatch"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("test-realm", match.getString("realm"));
+        assertEquals("mapper-1", match.getString("mapperId"));
+        assertEquals("EXACT", match.getString("mode"));
+        assertEquals("linear-scan", match.getString("engine"));
+        assertEquals(1, match.getInt("patternCount"));
+        assertTrue(match.getBoolean("matched"));
+    }
+
+    private static long count(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).count();
+    }
+}
@@ -0,0 +1,84 @@
+package de.treestack.auth;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.IdentityProviderMapperModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MapperStateMapTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final MapperStateMap<Object> map =
+            MapperStateMap.create(id -> new Object(), TimeUnit.HOURS.toNanos(24), clock::get);
+
+    @Test
+    void when_sameMapper_expect_sameState() {
+        Object first = map.get("m1");
+
+        assertSame(first, map.get("m1"));
+        assertSame(first, map.find("m1"));
+        assertNull(map.find("m2"));
+    }
+
+    @Test
+    void when_idleLongerThanExpiry_expect_stateDropped() {
+        map.get("idle");
+        map.get("busy");
+
+        clock.addAndGet(TimeUnit.HOURS.toNanos(20));
+        map.get("busy");
+        clock.addAndGet(TimeUnit.HOURS.toNanos(5));
+        map.sweep(clock.get());
+
+        assertNull(map.find("idle"));
+        assertNotNull(map.find("busy"));
+    }
+
+    @Test
+    void when_lookupWithoutAccess_expect_noRefresh() {
+        map.get("m1");
+
+        clock.addAndGet(TimeUnit.HOURS.toNanos(20));
+        map.find("m1");
+        clock.addAndGet(TimeUnit.HOURS.toNanos(5));
+        map.get("other");
+
+        assertNull(map.find("m1"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void when_realmRemoved_expect_stateOfItsMappersDropped() {
+        DomainStatistics.clear();
+        DomainStatistics.forMapper("m1").record("example.com", true);
+        DomainStatistics.forMapper("m2").record("example.com", true);
+
+        IdentityProviderMapperModel mapper = new IdentityProviderMapperModel();
+        mapper.setId("m1");
+        mapper.setIdentityProviderMapper(DomainRoleIdpMapper.PROVIDER_ID);
+        RealmModel realm = mock(RealmModel.class);
+        when(realm.getIdentityProviderMappersStream()).thenReturn(Stream.of(mapper));
+
+        MapperStateMap.onEvent(new RealmModel.RealmRemovedEvent() {
+            @Override
+            public RealmModel getRealm() {
+                return realm;
+            }
+
+            @Override
+            public KeycloakSession getKeycloakSession() {
+                return null;
+            }
+        });
+
+        assertNull(DomainStatistics.find("m1"));
+        assertNotNull(DomainStatistics.find("m2"));
+    }
+}
@@ -0,0 +1,68 @@
+package de.treestack.auth;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.sdk.testing.junit5.OpenTelemetryExtension;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.keycloak.models.IdentityProviderMapperModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MapperTracingTest {
+
+    @RegisterExtension
+    static final OpenTelemetryExtension OTEL = OpenTelemetryExtension.create();
+
+    @Test
+    void when_updateBrokeredUser_expect_spanPerPhase() {
+        // Arrange
+        RealmModel realm = mock(RealmModel.class);
+        UserModel user = mock(UserModel.class);
+        RoleModel matchedRole = mock(RoleModel.class);
+        IdentityProviderMapperModel mapperModel = mock(IdentityProviderMapperModel.class);
+        when(mapperModel.getConfig()).thenReturn(Map.of("allowedDomains", "example.com", "matchedRole", "role-matched"));
+        when(realm.getRole("role-matched")).thenReturn(matchedRole);
+        when(user.getEmail()).thenReturn("user@example.com");
+
+        // Act
+        new DomainRoleIdpMapper().updateBrokeredUser(mock(), realm, user, mapperModel, mock());
+
+        // Assert
+        List<SpanData> spans = OTEL.getSpans();
+        assertEquals(4, spans.size());
+
+        SpanData root = span(spans, "DomainRoleIdpMapper.updateBrokeredUser");
+        assertEquals("EXACT", root.getAttributes().get(AttributeKey.stringKey(MapperTracing.ATTR_MATCH_MODE)));
+        assertEquals("matched", root.getAttributes().get(AttributeKey.stringKey(MapperTracing.ATTR_OUTCOME)));
+        assertEquals(true, root.getAttributes().get(AttributeKey.booleanKey(MapperTracing.ATTR_ROLE_GRANTED)));
+
+        for (String phase : List.of("loadConfig", "matchDomain", "grantRole")) {
+            assertEquals(root.getSpanId(), span(spans, "DomainRoleIdpMapper." + phase).getParentSpanId());
+        }
+        assertEquals("linear-scan", span(spans, "DomainRoleIdpMapper.matchDomain")
+                .getAttributes().get(AttributeKey.stringKey(MapperTracing.ATTR_ENGINE)));
+    }
+
+    @Test
+    void when_emailInvalid_expect_skippedOutcome() {
+        UserModel user = mock(UserModel.class);
+        when(user.getEmail()).thenReturn("no-at-symbol");
+
+        new DomainRoleIdpMapper().updateBrokeredUser(mock(), mock(), user, mock(), mock());
+
+        SpanData root = span(OTEL.getSpans(), "DomainRoleIdpMapper.updateBrokeredUser");
+        assertEquals("skipped", root.getAttributes().get(AttributeKey.stringKey(MapperTracing.ATTR_OUTCOME)));
+    }
+
+    private static SpanData span(List<SpanData> spans, String name) {
+        return spans.stream().filter(s -> s.getName().equals(name)).findFirst().orElseThrow();
+    }
+}
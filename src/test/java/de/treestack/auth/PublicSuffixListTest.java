@@ -0,0 +1,82 @@
+package de.treestack.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PublicSuffixListTest {
+
+    private final PublicSuffixList psl = PublicSuffixList.get();
+
+    @Test
+    void when_domainBelowIcannSuffix_expect_registrableDomain() {
+        assertEquals("example.com", psl.registrableDomain("example.com"));
+        assertEquals("example.com", psl.registrableDomain("a.b.example.com"));
+        assertEquals("acme.co.uk", psl.registrableDomain("mail.eu.acme.co.uk"));
+        assertEquals("treestack.de", psl.registrableDomain("dev.treestack.de"));
+    }
+
+    @Test
+    void when_domainIsPublicSuffix_expect_null() {
+        assertNull(psl.registrableDomain("com"));
+        assertNull(psl.registrableDomain("co.uk"));
+        assertNull(psl.registrableDomain("github.io"));
+    }
+
+    @Test
+    void when_wildcardAndExceptionRules_expect_appliedPerSpec() {
+        // *.ck with exception !www.ck
+        assertNull(psl.registrableDomain("test.ck"));
+        assertEquals("b.test.ck", psl.registrableDomain("a.b.test.ck"));
+        assertEquals("www.ck", psl.registrableDomain("www.ck"));
+        assertEquals("www.ck", psl.registrableDomain("www.www.ck"));
+
+        // *.kawasaki.jp with exception !city.kawasaki.jp
+        assertNull(psl.registrableDomain("test.kawasaki.jp"));
+        assertEquals("city.kawasaki.jp", psl.registrableDomain("www.city.kawasaki.jp"));
+    }
+
+    @Test
+    void when_unlistedTopLevelDomain_expect_defaultRule() {
+        assertEquals("example.internal", psl.registrableDomain("mail.example.internal"));
+        assertNull(psl.registrableDomain("localhost"));
+    }
+
+    @Test
+    void when_internationalizedSuffix_expect_punycodeRules() {
+        // 公司.cn is listed in Unicode
+        String domain = DomainNames.normalize("例子.公司.cn");
+        assertEquals(domain, psl.registrableDomain(domain));
+        assertNull(psl.registrableDomain(DomainNames.normalize("公司.cn")));
+    }
+
+    @Test
+    void when_malformedDomain_expect_null() {
+        assertNull(psl.registrableDomain("example..com"));
+        assertNull(psl.registrableDomain(""));
+    }
+
+    @Test
+    void when_matchModeOrganization_expect_registrableDomainAndSubdomains() {
+        DomainMatcher matcher = DomainMatchers.plan(Set.of("acme.co.uk"), DomainMatchMode.ORGANIZATION);
+
+        assertEquals("public-suffix", matcher.engine());
+        assertTrue(matcher.matches("acme.co.uk"));
+        assertTrue(matcher.matches("mail.eu.acme.co.uk"));
+        assertFalse(matcher.matches("co.uk"));
+        assertFalse(matcher.matches("evilacme.co.uk"));
+        assertFalse(matcher.matches("acme.co.uk.evil.com"));
+    }
+
+    @Test
+    void when_organizationEntryNotRegistrable_expect_reducedOrDropped() {
+        DomainMatcher matcher = DomainMatchers.plan(Set.of("mail.acme.co.uk", "co.uk"), DomainMatchMode.ORGANIZATION);
+
+        assertTrue(matcher.matches("acme.co.uk"));
+        assertTrue(matcher.matches("www.acme.co.uk"));
+        assertFalse(matcher.matches("other.co.uk"));
+        assertEquals(Set.of("mail.acme.co.uk", "co.uk"), matcher.domains());
+    }
+}
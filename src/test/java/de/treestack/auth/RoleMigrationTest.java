@@ -0,0 +1,161 @@
+package de.treestack.auth;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.models.*;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RoleMigrationTest {
+
+    @Mock
+    KeycloakSessionFactory sessionFactory;
+    @Mock
+    KeycloakSession session;
+    @Mock
+    KeycloakTransactionManager transaction;
+    @Mock
+    RealmProvider realms;
+    @Mock
+    UserProvider users;
+    @Mock
+    RealmModel realm;
+    @Mock
+    RoleModel oldRole;
+    @Mock
+    RoleModel newRole;
+    @Mock
+    UserModel alice;
+    @Mock
+    UserModel bob;
+
+    RoleMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        RoleMigration.clear();
+        migration = new RoleMigration(sessionFactory, "realm-id", "m1", "idp", "role-a", "role-b", 2, 0);
+        when(session.realms()).thenReturn(realms);
+        when(realms.getRealm("realm-id")).thenReturn(realm);
+        when(realm.getRole("role-a")).thenReturn(oldRole);
+        when(realm.getRole("role-b")).thenReturn(newRole);
+    }
+
+    @Test
+    void when_fullBatch_expect_membersMovedAndMoreToCome() {
+        // Arrange
+        when(session.users()).thenReturn(users);
+        when(users.getRoleMembersStream(realm, oldRole, 0, 2)).thenReturn(Stream.of(alice, bob));
+        when(users.getFederatedIdentity(eq(realm), any(), eq("idp"))).thenReturn(link());
+        when(bob.hasRole(newRole)).thenReturn(true);
+
+        // Act
+        RoleMigration.BatchResult result = migration.migrateBatch(session);
+
+        // Assert
+        assertEquals(new RoleMigration.BatchResult(2, 0, 0, true), result);
+        verify(alice).grantRole(newRole);
+        verify(alice).deleteRoleMapping(oldRole);
+        verify(bob, never()).grantRole(newRole);
+        verify(bob).deleteRoleMapping(oldRole);
+    }
+
+    @Test
+    void when_memberNotLinkedToIdentityProvider_expect_skippedAndUntouched() {
+        // Arrange
+        when(session.users()).thenReturn(users);
+        when(users.getRoleMembersStream(realm, oldRole, 0, 2)).thenReturn(Stream.of(alice, bob));
+        when(users.getFederatedIdentity(realm, alice, "idp")).thenReturn(link());
+        when(users.getFederatedIdentity(realm, bob, "idp")).thenReturn(null);
+
+        // Act
+        RoleMigration.BatchResult result = migration.migrateBatch(session);
+
+        // Assert
+        assertEquals(new RoleMigration.BatchResult(1, 1, 0, true), result);
+        verify(alice).deleteRoleMapping(oldRole);
+        verify(bob, never()).grantRole(any());
+        verify(bob, never()).deleteRoleMapping(any());
+    }
+
+    @Test
+    void when_userFailsInsideBatch_expect_pageRetriedPerUserAndUserCountedAsFailed() {
+        // Arrange
+        inTransactions();
+        when(users.getRoleMembersStream(realm, oldRole, 0, 2)).thenAnswer(invocation -> Stream.of(alice, bob));
+        when(users.getRoleMembersStream(realm, oldRole, 1, 2)).thenReturn(Stream.of());
+        when(users.getFederatedIdentity(eq(realm), any(), eq("idp"))).thenReturn(link());
+        when(alice.getId()).thenReturn("alice-id");
+        when(bob.getId()).thenReturn("bob-id");
+        when(users.getUserById(realm, "alice-id")).thenReturn(alice);
+        when(users.getUserById(realm, "bob-id")).thenReturn(bob);
+        doThrow(new IllegalStateException("constraint violation")).when(alice).grantRole(newRole);
+
+        // Act
+        migration.run();
+
+        // Assert
+        RoleMigration.Progress progress = migration.progress();
+        assertEquals(RoleMigration.State.COMPLETED, progress.state());
+        assertEquals(1, progress.migrated());
+        assertEquals(0, progress.skipped());
+        assertEquals(1, progress.failed());
+        assertEquals(2, progress.batches());
+        verify(transaction, atLeastOnce()).setRollbackOnly();
+        verify(alice, never()).deleteRoleMapping(oldRole);
+        verify(bob).deleteRoleMapping(oldRole);
+    }
+
+    @Test
+    void when_batchCommitFails_expect_countersOnlyForCommittedWork() {
+        // Arrange
+        inTransactions();
+        doThrow(new IllegalStateException("commit failed")).doNothing().when(session).close();
+        when(users.getRoleMembersStream(realm, oldRole, 0, 2))
+                .thenAnswer(invocation -> Stream.of(alice, bob))
+                .thenAnswer(invocation -> Stream.of(alice, bob))
+                .thenReturn(Stream.of());
+        when(users.getFederatedIdentity(eq(realm), any(), eq("idp"))).thenReturn(link());
+        when(alice.getId()).thenReturn("alice-id");
+        when(bob.getId()).thenReturn("bob-id");
+        when(users.getUserById(realm, "alice-id")).thenReturn(alice);
+        when(users.getUserById(realm, "bob-id")).thenReturn(bob);
+
+        // Act
+        migration.run();
+
+        // Assert
+        RoleMigration.Progress progress = migration.progress();
+        assertEquals(RoleMigration.State.COMPLETED, progress.state());
+        assertEquals(2, progress.migrated());
+        assertEquals(0, progress.skipped());
+        assertEquals(0, progress.failed());
+    }
+
+    @Test
+    void when_roleRemoved_expect_failure() {
+        when(realm.getRole("role-b")).thenReturn(null);
+        lenient().when(session.users()).thenReturn(users);
+
+        assertThrows(IllegalStateException.class, () -> migration.migrateBatch(session));
+    }
+
+    private void inTransactions() {
+        when(sessionFactory.create()).thenReturn(session);
+        when(session.getTransactionManager()).thenReturn(transaction);
+        when(session.users()).thenReturn(users);
+    }
+
+    private static FederatedIdentityModel link() {
+        return new FederatedIdentityModel("idp", "external-id", "external-name");
+    }
+}
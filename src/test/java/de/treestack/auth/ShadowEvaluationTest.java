@@ -0,0 +1,83 @@
+package de.treestack.auth;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShadowEvaluationTest {
+
+    private final DomainMatcher live = DomainMatchers.plan(Set.of("example.com", "partner.org"), DomainMatchMode.EXACT);
+    private final DomainMatcher candidate = DomainMatchers.plan(Set.of("example.com", "*.partner.org"), DomainMatchMode.WILDCARD);
+
+    @BeforeEach
+    void setUp() {
+        ShadowEvaluation.clear();
+    }
+
+    @Test
+    void when_samplePercentAtBounds_expect_neverOrAlways() {
+        for (int i = 0; i < 100; i++) {
+            assertFalse(ShadowEvaluation.sample(0));
+            assertTrue(ShadowEvaluation.sample(100));
+        }
+    }
+
+    @Test
+    void when_evaluating_expect_agreementsAndDisagreementsCounted() {
+        ShadowEvaluation shadow = new ShadowEvaluation();
+
+        evaluate(shadow, live, candidate, "example.com");
+        evaluate(shadow, live, candidate, "partner.org");
+        evaluate(shadow, live, candidate, "eu.partner.org");
+        evaluate(shadow, live, candidate, "other.net");
+
+        ShadowEvaluation.Snapshot snapshot = shadow.snapshot();
+        assertEquals("linear-scan", snapshot.liveEngine());
+        assertEquals("label-trie", snapshot.candidateEngine());
+        assertEquals(4, snapshot.samples());
+        assertEquals(2, snapshot.agreements());
+        assertEquals(1, snapshot.matchedOnlyLive());
+        assertEquals(1, snapshot.matchedOnlyCandidate());
+        assertTrue(snapshot.meanLiveNanos() >= 0);
+        assertTrue(snapshot.meanCandidateNanos() >= 0);
+    }
+
+    @Test
+    void when_candidateChanges_expect_countersStartOver() {
+        ShadowEvaluation shadow = new ShadowEvaluation();
+        evaluate(shadow, live, candidate, "example.com");
+
+        DomainMatcher other = DomainMatchers.plan(Set.of("other.net"), DomainMatchMode.EXACT);
+        evaluate(shadow, live, other, "other.net");
+
+        assertEquals(1, shadow.snapshot().samples());
+        assertEquals(1, shadow.snapshot().matchedOnlyCandidate());
+    }
+
+    @Test
+    void when_nothingEvaluated_expect_emptySnapshot() {
+        ShadowEvaluation.Snapshot snapshot = new ShadowEvaluation().snapshot();
+
+        assertEquals(0, snapshot.samples());
+        assertNull(snapshot.candidateEngine());
+    }
+
+    @Test
+    void when_tenantGiven_expect_candidateMatchedWithTenant() {
+        ShadowEvaluation shadow = new ShadowEvaluation();
+        DomainMatcher scoped = DomainMatchers.plan(Set.of("tenant-a/example.com"), DomainMatchMode.EXACT, true);
+
+        shadow.evaluate(live, true, 0, scoped, "tenant-a", "example.com");
+        shadow.evaluate(live, true, 0, scoped, "tenant-b", "example.com");
+
+        assertEquals(1, shadow.snapshot().agreements());
+        assertEquals(1, shadow.snapshot().matchedOnlyLive());
+    }
+
+    private static void evaluate(ShadowEvaluation shadow, DomainMatcher live, DomainMatcher candidate, String domain) {
+        shadow.evaluate(live, live.matches(domain), 0, candidate, null, domain);
+    }
+}